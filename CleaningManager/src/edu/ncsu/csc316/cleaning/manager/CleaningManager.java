@@ -1,16 +1,19 @@
 package edu.ncsu.csc316.cleaning.manager;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Comparator;
 
 import edu.ncsu.csc316.cleaning.data.CleaningLogEntry;
 import edu.ncsu.csc316.cleaning.data.RoomRecord;
 import edu.ncsu.csc316.cleaning.factory.DSAFactory;
 import edu.ncsu.csc316.cleaning.io.InputReader;
+import edu.ncsu.csc316.cleaning.manager.CoverageKernel.CoverageMode;
 import edu.ncsu.csc316.dsa.list.List;
 import edu.ncsu.csc316.dsa.map.Map;
-import edu.ncsu.csc316.dsa.sorter.Sorter;
 
 /**
  * CleaningManager provides behaviors for retrieving information about cleaning
@@ -21,14 +24,40 @@ import edu.ncsu.csc316.dsa.sorter.Sorter;
  * @author Ethan Treece
  *
  */
-public class CleaningManager {
+public class CleaningManager implements Closeable {
 
+    /**
+     * Where cleaning events are held in memory
+     * @author Ethan Treece
+     *
+     */
+    public enum StorageMode {
+        /** Hold events in arrays on the Java heap */
+        HEAP,
+        /**
+         * Hold events in direct buffers outside the Java heap, so the number of
+         * events loaded does not affect heap size or garbage collection
+         */
+        OFF_HEAP
+    }
     
-    /** List of cleaning log */
-    private List<CleaningLogEntry> cleaningLogs;
+    /** Message of the exception thrown when a closed manager is used */
+    static final String CLOSED_MESSAGE = "Manager is closed.";
+    
+    /** Log-structured store of cleaning events */
+    private EventStore cleaningLogs;
     
     /** List of room records */
     private List<RoomRecord> roomRecords;
+    
+    /** Columnar copy of the cleaning log used to compute coverage */
+    private CoverageKernel coverage;
+    
+    /** Running totals for each room */
+    private RoomStatistics statistics;
+    
+    /** True once the manager has been closed */
+    private boolean closed;
 
     /**
      * Constructs a new CleaningManager for processing cleaning history information
@@ -42,37 +71,147 @@ public class CleaningManager {
      *                               log file cannot be read
      */
     public CleaningManager(String pathToRoomFile, String pathToLogFile) throws FileNotFoundException {
-        List<RoomRecord> rooms = InputReader.readRoomFile(pathToRoomFile);
-        List<CleaningLogEntry> cleanings = InputReader.readLogFile(pathToLogFile);
-        
-        CleaningLogComparator logComparator = new CleaningLogComparator();
-        RoomRecordComparator roomComparator = new RoomRecordComparator();
-        Sorter<RoomRecord> roomSorter = DSAFactory.getComparisonSorter(roomComparator);
-        Sorter<CleaningLogEntry> cleaningSorter = DSAFactory.getComparisonSorter(logComparator);
-        
-        RoomRecord[] roomsArray = new RoomRecord[rooms.size()];
-        CleaningLogEntry[] cleaningsArray = new CleaningLogEntry[cleanings.size()];
-        
-        int roomCounter = 0;
-        for (RoomRecord r : rooms) {
-            roomsArray[roomCounter++] = r;
-        }
-        int logCounter = 0;
-        for (CleaningLogEntry c : cleanings) {
-            cleaningsArray[logCounter++] = c;
-        }
-        
-        roomSorter.sort(roomsArray);
-        cleaningSorter.sort(cleaningsArray);
-        
+        this(pathToRoomFile, pathToLogFile, null);
+    }
+
+    /**
+     * Constructs a new CleaningManager for processing cleaning history information
+     * from the provided file with room information and the provided file with
+     * cleaning log event information. Cleaning events added later are written
+     * to sorted run files in the provided directory, which are deleted when the
+     * manager is closed.
+     * 
+     * @param pathToRoomFile the path to the file that contains room information
+     * @param pathToLogFile  the path to the file that contains cleaning event log
+     *                       information
+     * @param runDirectory   the directory for run files, or null to use a
+     *                       temporary directory
+     * @throws FileNotFoundException if either the room file or the cleaning event
+     *                               log file cannot be read
+     */
+    public CleaningManager(String pathToRoomFile, String pathToLogFile, Path runDirectory) throws FileNotFoundException {
+        this(pathToRoomFile, pathToLogFile, runDirectory, StorageMode.HEAP);
+    }
+
+    /**
+     * Constructs a new CleaningManager for processing cleaning history information
+     * from the provided file with room information and the provided file with
+     * cleaning log event information, holding events as the storage mode
+     * describes. Cleaning events added later are written to sorted run files in
+     * the provided directory. Run files are deleted and off-heap buffers are
+     * dropped when the manager is closed.
+     * 
+     * The log is parsed and sorted one block at a time with an EventSorter,
+     * so it is never held as CleaningLogEntry objects. Off the heap, the heap
+     * only holds the block being parsed, however many events are loaded.
+     * 
+     * @param pathToRoomFile the path to the file that contains room information
+     * @param pathToLogFile  the path to the file that contains cleaning event log
+     *                       information
+     * @param runDirectory   the directory for run files, or null to use a
+     *                       temporary directory
+     * @param storage        where cleaning events are held in memory
+     * @throws FileNotFoundException if either the room file or the cleaning event
+     *                               log file cannot be read
+     */
+    public CleaningManager(String pathToRoomFile, String pathToLogFile, Path runDirectory, StorageMode storage)
+            throws FileNotFoundException {
+        this(EventSorter.sort(InputReader.readRoomFile(pathToRoomFile),
+                new LogIndex(pathToLogFile, LogIndex.DEFAULT_BLOCK_SIZE), storage), runDirectory);
+    }
+
+    /**
+     * Constructs a new CleaningManager from a cleaning log whose blocks have
+     * all been sorted. The sorted blocks are merged into the event store, and
+     * the sorter's room statistics, which already record every event, are
+     * kept up to date from then on.
+     * 
+     * @param sorter       sorter holding every block of the cleaning log
+     * @param runDirectory the directory for run files, or null to use a
+     *                     temporary directory
+     */
+    CleaningManager(EventSorter sorter, Path runDirectory) {
         roomRecords = DSAFactory.getIndexedList();
-        for (RoomRecord r : roomsArray) {
+        for (RoomRecord r : sorter.getRooms()) {
             roomRecords.addFirst(r);
         }
-        cleaningLogs = DSAFactory.getIndexedList();
-        for (CleaningLogEntry c : cleaningsArray) {
-            cleaningLogs.addFirst(c);
+        statistics = sorter.getStatistics();
+        cleaningLogs = sorter.toStore(runDirectory);
+        coverage = buildCoverageKernel(cleaningLogs.getBaseColumns() != null);
+    }
+
+    /**
+     * Adds a cleaning event to the log. Events may arrive late and in any order;
+     * the event is reflected in every report that follows. An event identical
+     * to one already in the log is ignored.
+     * 
+     * @param entry the cleaning event to add
+     * @return true if the event was added, false if it was already in the log
+     * @throws IllegalArgumentException if the event's room is not a known room
+     */
+    public boolean addCleaningEvent(CleaningLogEntry entry) {
+        checkOpen();
+        int room = statistics.indexOf(entry.getRoomID());
+        if (room < 0) {
+            throw new IllegalArgumentException("Unknown room: " + entry.getRoomID());
+        }
+        long timestamp = toEpochSecond(entry.getTimestamp());
+        if (!cleaningLogs.add(room, timestamp, entry.getPercentCompleted())) {
+            return false;
         }
+        coverage.add(room, timestamp, entry.getPercentCompleted());
+        statistics.record(room, timestamp, entry.getPercentCompleted());
+        return true;
+    }
+
+    /**
+     * Merges every cleaning event added so far into a single sorted run,
+     * waiting for the merge to finish. Merging also happens in the background
+     * as events are added, so calling this is never required.
+     */
+    public void compact() {
+        checkOpen();
+        cleaningLogs.compact();
+    }
+
+    /**
+     * Stops background merging of cleaning events, deletes the run files and
+     * drops the off-heap buffers. Direct memory is returned to the system once
+     * the garbage collector has collected the buffers, not during close. Every
+     * other method throws an IllegalStateException after the manager is
+     * closed; closing again has no effect.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cleaningLogs.close();
+    }
+
+    /**
+     * Returns the running totals for each room, including rooms that have never
+     * been cleaned. The returned index is kept up to date as events are added.
+     * 
+     * @return statistics for each room
+     */
+    public RoomStatistics getRoomStatistics() {
+        checkOpen();
+        return statistics;
+    }
+
+    /**
+     * Returns a cursor over the cleaning events of a range of rooms, by room
+     * and then most recent first. The cursor seeks to the first room once and
+     * then reads the events in place, so nothing is copied onto the heap. The
+     * cursor must be read to the end or closed, so that run files merged away
+     * while it is open can be closed.
+     * 
+     * @param fromRoom index of the first room, as used by getRoomStatistics
+     * @param toRoom   index after the last room
+     * @return cursor over the rooms' events
+     */
+    EventStore.Cursor getEventCursor(int fromRoom, int toRoom) {
+        checkOpen();
+        return cleaningLogs.cursor(fromRoom, toRoom);
     }
 
     /**
@@ -86,6 +225,7 @@ public class CleaningManager {
      * @return a map of cleaning event logs for each room
      */
     public Map<String, List<CleaningLogEntry>> getEventsByRoom() {
+        checkOpen();
         // Declare an empty map that will hold an entry for each room
         Map<String, List<CleaningLogEntry>> m = DSAFactory.getMap();
         // Iterate through the rooms, adding each one to the map along with an empty
@@ -94,13 +234,103 @@ public class CleaningManager {
             List<CleaningLogEntry> log = DSAFactory.getIndexedList();
             m.put(r.getRoomID(), log);
         }
-        for (CleaningLogEntry c : cleaningLogs) {
-            String id = c.getRoomID();
-            m.get(id).addFirst(c);
+        // The store yields events by room, most recent first
+        try (EventStore.Cursor c = cleaningLogs.cursor()) {
+            while (c.next()) {
+                String id = statistics.getRoomID(c.room());
+                LocalDateTime time = LocalDateTime.ofEpochSecond(c.timestamp(), 0, ZoneOffset.UTC);
+                m.get(id).addLast(new CleaningLogEntry(time, id, c.percent()));
+            }
         }
         return m;
     }
 
+    /**
+     * Returns the cleaning events that match the query, sorted by room ID
+     * ascending and then by timestamp descending. Only rooms within the query's
+     * room bounds are visited, and each room's events are read starting at the
+     * query's latest time, so the cost depends on the number of matches rather
+     * than the size of the log.
+     * 
+     * @param query the filter to apply
+     * @return the matching cleaning events
+     */
+    public List<CleaningLogEntry> getEvents(EventQuery query) {
+        checkOpen();
+        List<CleaningLogEntry> result = DSAFactory.getIndexedList();
+        for (int room = firstQueryRoom(query); room >= 0; room = nextQueryRoom(query, room)) {
+            String id = statistics.getRoomID(room);
+            try (EventStore.Cursor c = cleaningLogs.cursor(room, query.getFromTime(), query.getToTime())) {
+                while (c.next()) {
+                    if (query.matchesPercent(c.percent())) {
+                        LocalDateTime time = LocalDateTime.ofEpochSecond(c.timestamp(), 0, ZoneOffset.UTC);
+                        result.addLast(new CleaningLogEntry(time, id, c.percent()));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of cleaning events that match the query. Without a
+     * percent bound the count comes from the positions of each room's events
+     * and no events are read.
+     * 
+     * @param query the filter to apply
+     * @return the number of matching cleaning events
+     */
+    public long countEvents(EventQuery query) {
+        checkOpen();
+        long total = 0;
+        for (int room = firstQueryRoom(query); room >= 0; room = nextQueryRoom(query, room)) {
+            if (!query.hasPercentFilter()) {
+                total += cleaningLogs.count(room, query.getFromTime(), query.getToTime());
+            } else {
+                try (EventStore.Cursor c = cleaningLogs.cursor(room, query.getFromTime(), query.getToTime())) {
+                    while (c.next()) {
+                        if (query.matchesPercent(c.percent())) {
+                            total++;
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the first room that could hold events matching the query
+     * @param query the filter to apply
+     * @return room index, or -1 if no room matches
+     */
+    private int firstQueryRoom(EventQuery query) {
+        String lowest = query.getLowestRoom();
+        return nextQueryRoom(query, (lowest == null ? 0 : statistics.lowerBound(lowest)) - 1);
+    }
+
+    /**
+     * Returns the next room after the given one that could hold events matching
+     * the query. Rooms with no cleanings in the query's time range are skipped
+     * using the room statistics.
+     * @param query the filter to apply
+     * @param room room index to search after
+     * @return room index, or -1 if no later room matches
+     */
+    private int nextQueryRoom(EventQuery query, int room) {
+        for (int next = room + 1; next < statistics.size(); next++) {
+            String id = statistics.getRoomID(next);
+            if (!query.mayMatchFrom(id)) {
+                return -1;
+            }
+            if (query.matchesRoom(id) && statistics.getCount(next) > 0
+                    && statistics.getLastCleaned(next) >= query.getFromTime()) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns the square footage (as a whole number) cleaned since a provided date
      * and time. Partial square feet are rounded down to the nearest whole number.
@@ -109,46 +339,86 @@ public class CleaningManager {
      * @return the square footage cleaned since the provided date and time
      */
     public int getCoverageSince(LocalDateTime time) {
-        // Get number of cleaning event log entries
-        // Get map of rooms by roomID
-        Map<String, RoomRecord> r = getRoomsByID();
-        // Initialize total square footage as 0
-        int total = 0;
-        // Iterate through each cleaning log entry
-        for (CleaningLogEntry c : cleaningLogs) {
-            // Check that the cleaning entry occurred after the last time
-            // the vacuum bag was replaced
-            if (c.getTimestamp().isAfter(time)) {
-                RoomRecord room = r.get(c.getRoomID());
-                int length = room.getLength();
-                int width = room.getWidth();
-                double percent = c.getPercentCompleted() / 100.0;
-                total = (int) (total + length * width * percent);
+        checkOpen();
+        return getCoverageSince(time, CoverageMode.EXACT);
+    }
+
+    /**
+     * Returns the square footage (as a whole number) cleaned since a provided date
+     * and time, using the provided mode to round partial square feet. In
+     * TRUNCATE_EACH_EVENT mode the running total is rounded down after every
+     * cleaning event, matching earlier versions of this class.
+     * 
+     * @param time the time since which to calculate square footage cleaned
+     * @param mode how partial square feet are rounded
+     * @return the square footage cleaned since the provided date and time
+     */
+    public int getCoverageSince(LocalDateTime time, CoverageMode mode) {
+        checkOpen();
+        return getCoverageSince(toEpochSecond(time), mode);
+    }
+
+    /**
+     * Returns the square footage (as a whole number) cleaned since a provided
+     * number of seconds since the epoch, with cleaning log timestamps read as
+     * UTC, using the provided mode to round partial square feet.
+     * 
+     * @param epochSecond the time since which to calculate square footage cleaned
+     * @param mode how partial square feet are rounded
+     * @return the square footage cleaned since the provided time
+     */
+    public int getCoverageSince(long epochSecond, CoverageMode mode) {
+        checkOpen();
+        return coverage.coverageSince(epochSecond, mode);
+    }
+    
+    /**
+     * Builds the coverage kernel from the events in the store. Off-heap events
+     * are scanned by the kernel where the store holds them rather than copied.
+     * @param offHeap true if the store holds its events outside the Java heap
+     * @return coverage kernel over the events
+     */
+    private CoverageKernel buildCoverageKernel(boolean offHeap) {
+        if (offHeap) {
+            return CoverageKernel.offHeap(statistics.getAreas(), cleaningLogs.getBaseColumns());
+        }
+        CoverageKernel kernel = new CoverageKernel(statistics.getAreas(), new int[0], new long[0], new int[0]);
+        try (EventStore.Cursor c = cleaningLogs.cursor()) {
+            while (c.next()) {
+                kernel.add(c.room(), c.timestamp(), c.percent());
             }
         }
-        // Return the total cast to an int as to round down
-        return (int) total;
+        return kernel;
     }
     
     /**
-     * Creates a map of room records by room id
-     * @return map of room records by room id
+     * Throws an exception if the manager has been closed
+     * @throws IllegalStateException if the manager has been closed
      */
-    private Map<String, RoomRecord> getRoomsByID() {
-        Map<String, RoomRecord> m = DSAFactory.getMap();
-        for (RoomRecord r : roomRecords) {
-            m.put(r.getRoomID(), r);
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException(CLOSED_MESSAGE);
         }
-        return m;
     }
     
     /**
-     * Comparator for comparing Entry objects of Strings as keys and Lists of ClenaingLogEnties as values
-     * Sorted by size of list descending, then by name ascsending
+     * Converts a date and time to whole seconds since the epoch. Cleaning log
+     * timestamps have no fractional seconds, so comparing whole seconds gives
+     * the same result as LocalDateTime.isAfter.
+     * @param time date and time to convert
+     * @return seconds since the epoch
+     */
+    static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+    
+    /**
+     * Comparator for comparing CleaningLogEntry objects
+     * Sorted by room ID ascending, then by timestamp descending, then by percent ascending
      * @author Ethan Treece 
      *
      */
-    public class CleaningLogComparator implements Comparator<CleaningLogEntry> {
+    public static class CleaningLogComparator implements Comparator<CleaningLogEntry> {
         
         @Override
         public int compare(CleaningLogEntry o1, CleaningLogEntry o2) {
@@ -158,7 +428,7 @@ public class CleaningManager {
                 } else if (o1.getTimestamp().isBefore(o2.getTimestamp())) {
                     return 1;
                 } else {
-                    return 0;
+                    return Integer.compare(o1.getPercentCompleted(), o2.getPercentCompleted());
                 }
             } else {
                 return o1.getRoomID().compareTo(o2.getRoomID());
@@ -173,7 +443,7 @@ public class CleaningManager {
      * @author Ethan Treece 
      *
      */
-    public class RoomRecordComparator implements Comparator<RoomRecord> {
+    public static class RoomRecordComparator implements Comparator<RoomRecord> {
 
         @Override
         public int compare(RoomRecord o1, RoomRecord o2) {
@@ -0,0 +1,368 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * CoverageKernel stores cleaning events as primitive columns (room index,
+ * timestamp in epoch seconds, and percent cleaned) alongside a precomputed
+ * table of room areas, so the square footage cleaned since a point in time can
+ * be summed without touching any CleaningLogEntry or RoomRecord objects.
+ *
+ * In exact mode the kernel sums area times percent as whole numbers and only
+ * divides by 100 at the end, so the result is the true total rounded down. In
+ * compatibility mode it reproduces the original behavior of rounding the
+ * running total down after every event.
+ *
+ * In exact mode the heap events are indexed by timestamp with a suffix sum of
+ * area times percent, so a query is a binary search plus a scan of the events
+ * added since the index was last rebuilt. The index is rebuilt by merging
+ * those events in once they outnumber a sixteenth of the indexed events.
+ *
+ * A kernel created with offHeap scans a set of OffHeapColumns in place, such
+ * as the event store's base run, so loaded events are not copied a second
+ * time. The off-heap events are not indexed, since the index would hold two
+ * longs per event on the heap, so each exact query scans them once. Events
+ * added later are kept in the heap columns and indexed.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class CoverageKernel {
+
+    /**
+     * Modes for summing square footage
+     * @author Ethan Treece
+     *
+     */
+    public enum CoverageMode {
+        /** Sum area times percent exactly, rounding down once at the end */
+        EXACT,
+        /** Round the running total down after every event, as in the original implementation */
+        TRUNCATE_EACH_EVENT
+    }
+
+    /** Fewest unindexed events that trigger a rebuild of the index */
+    private static final int MIN_UNINDEXED = 4096;
+
+    /** Bound on since, and assumed bound on timestamps, that keeps since minus a timestamp from overflowing */
+    private static final long MAX_SINCE = 1L << 62;
+
+    /** Area of each room in square feet, indexed by room index */
+    private final int[] areas;
+
+    /** Room index of each event */
+    private int[] rooms;
+
+    /** Timestamp of each event in epoch seconds */
+    private long[] timestamps;
+
+    /** Percent cleaned of each event */
+    private int[] percents;
+
+    /** Area times percent of each event, precomputed for the exact kernel */
+    private long[] weights;
+
+    /** Number of events in the columns */
+    private int size;
+
+    /** Number of leading events in the columns that are in the index */
+    private int indexed;
+
+    /** Timestamps of the indexed events in ascending order */
+    private long[] indexTimes;
+
+    /**
+     * Sum of area times percent of the indexed events from each position of
+     * indexTimes to the end, with a final 0
+     */
+    private long[] indexSums;
+
+    /** Events scanned in place outside the heap, or null if there are none */
+    private final OffHeapColumns offHeapEvents;
+
+    /**
+     * Constructs a new CoverageKernel from room areas and event columns. The
+     * event arrays must all have the same length, and the kernel takes ownership
+     * of them. An event whose room index is negative belongs to a room without a
+     * room record and covers no area.
+     *
+     * @param areas      area of each room, indexed by room index
+     * @param rooms      room index of each event
+     * @param timestamps timestamp of each event in epoch seconds
+     * @param percents   percent cleaned of each event
+     * @throws IllegalArgumentException if the event arrays differ in length
+     */
+    public CoverageKernel(int[] areas, int[] rooms, long[] timestamps, int[] percents) {
+        if (rooms.length != timestamps.length || rooms.length != percents.length) {
+            throw new IllegalArgumentException("Event columns must have the same length.");
+        }
+        this.areas = areas;
+        this.rooms = rooms;
+        this.timestamps = timestamps;
+        this.percents = percents;
+        this.weights = new long[rooms.length];
+        this.size = rooms.length;
+        this.offHeapEvents = null;
+        for (int i = 0; i < size; i++) {
+            weights[i] = (long) areaOf(rooms[i]) * percents[i];
+        }
+        this.indexTimes = new long[0];
+        this.indexSums = new long[1];
+        reindex();
+    }
+
+    /**
+     * Constructs a new CoverageKernel that scans the provided off-heap events
+     * in place
+     * @param areas area of each room, indexed by room index
+     * @param events events to scan, which are shared and not copied
+     */
+    private CoverageKernel(int[] areas, OffHeapColumns events) {
+        this.areas = areas;
+        this.rooms = new int[0];
+        this.timestamps = new long[0];
+        this.percents = new int[0];
+        this.weights = new long[0];
+        this.offHeapEvents = events;
+        this.indexTimes = new long[0];
+        this.indexSums = new long[1];
+    }
+
+    /**
+     * Returns a new CoverageKernel over events held outside the Java heap. The
+     * columns are scanned in place rather than copied, so they must not change
+     * while the kernel is in use. Area times percent is computed as the events
+     * are scanned rather than stored. Events added later are kept on the heap.
+     * @param areas area of each room, indexed by room index
+     * @param events events to scan
+     * @return a kernel over the off-heap events
+     */
+    public static CoverageKernel offHeap(int[] areas, OffHeapColumns events) {
+        return new CoverageKernel(areas, events);
+    }
+
+    /**
+     * Adds an event to the end of the columns. Coverage does not depend on the
+     * order of events, so events can be added in any order.
+     * @param room room index of the event
+     * @param timestamp timestamp of the event in epoch seconds
+     * @param percent percent cleaned
+     */
+    public void add(int room, long timestamp, int percent) {
+        if (size == rooms.length) {
+            int capacity = Math.max(8, size * 2);
+            rooms = Arrays.copyOf(rooms, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            percents = Arrays.copyOf(percents, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        rooms[size] = room;
+        timestamps[size] = timestamp;
+        percents[size] = percent;
+        weights[size] = (long) areaOf(room) * percent;
+        size++;
+        if (size - indexed > Math.max(MIN_UNINDEXED, indexed / 16)) {
+            reindex();
+        }
+    }
+
+    /**
+     * Returns the number of events in the kernel
+     * @return number of events
+     */
+    public int size() {
+        return (int) Math.min((offHeapEvents == null ? 0 : offHeapEvents.size()) + size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the square footage cleaned strictly after the provided time, rounded
+     * down to the nearest whole number
+     *
+     * @param since the time since which to calculate coverage, in epoch seconds
+     * @param mode  how partial square feet are rounded
+     * @return the square footage cleaned since the provided time
+     */
+    public int coverageSince(long since, CoverageMode mode) {
+        if (mode == CoverageMode.TRUNCATE_EACH_EVENT) {
+            return truncatedCoverageSince(since);
+        }
+        return exactCoverageSince(since);
+    }
+
+    /**
+     * Sums area times percent over every event after the given time with whole
+     * number arithmetic. Indexed events are summed with a binary search of the
+     * index. The unindexed and off-heap events are scanned, and each event's
+     * weight is masked with the sign of since minus its timestamp, which is all
+     * ones exactly when the event is after since, instead of being selected by
+     * a comparison. Timestamps are assumed to lie within 2^62 seconds of the
+     * epoch, as every LocalDateTime does, and since is clamped to that range
+     * so the subtraction cannot overflow.
+     *
+     * @param since the time since which to calculate coverage, in epoch seconds
+     * @return the square footage cleaned since the provided time
+     */
+    private int exactCoverageSince(long since) {
+        since = Math.max(-MAX_SINCE, Math.min(since, MAX_SINCE));
+        long[] ts = timestamps;
+        long[] w = weights;
+        int n = size;
+        long sum = indexSums[upperBound(indexTimes, since)];
+        for (int i = indexed; i < n; i++) {
+            sum += w[i] & (since - ts[i]) >> 63;
+        }
+        if (offHeapEvents != null) {
+            sum += exactOffHeapSum(since);
+        }
+        // Saturate the same way casting an oversized double to int does
+        return (int) Math.min(sum / 100, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sums area times percent over every off-heap event after the given time,
+     * scanning each segment's records in place with the same sign mask as the
+     * unindexed heap events
+     *
+     * @param since the time since which to calculate coverage, in epoch seconds
+     * @return the sum of area times percent, in hundredths of a square foot
+     */
+    private long exactOffHeapSum(long since) {
+        long sum = 0;
+        for (int s = 0; s < offHeapEvents.getSegmentCount(); s++) {
+            ByteBuffer b = offHeapEvents.getSegment(s);
+            int end = offHeapEvents.getSegmentSize(s) * OffHeapColumns.RECORD_SIZE;
+            for (int off = 0; off < end; off += OffHeapColumns.RECORD_SIZE) {
+                long weight = (long) areaOf(b.getInt(off + OffHeapColumns.ROOM_OFFSET))
+                        * b.getInt(off + OffHeapColumns.PERCENT_OFFSET);
+                sum += weight & (since - b.getLong(off + OffHeapColumns.TIMESTAMP_OFFSET)) >> 63;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Merges the unindexed events into the index. The unindexed events are
+     * sorted by timestamp and merged with the indexed ones from the latest
+     * timestamp down, so the suffix sums are built in the same pass.
+     */
+    private void reindex() {
+        int added = size - indexed;
+        long[] addedTimes = Arrays.copyOfRange(timestamps, indexed, size);
+        long[] addedWeights = Arrays.copyOfRange(weights, indexed, size);
+        sortByTime(addedTimes, addedWeights, 0, added, new long[added], new long[added]);
+        int total = indexTimes.length + added;
+        long[] times = new long[total];
+        long[] sums = new long[total + 1];
+        int a = indexTimes.length - 1;
+        int b = added - 1;
+        for (int k = total - 1; k >= 0; k--) {
+            long weight;
+            if (b < 0 || a >= 0 && indexTimes[a] > addedTimes[b]) {
+                times[k] = indexTimes[a];
+                weight = indexSums[a] - indexSums[a + 1];
+                a--;
+            } else {
+                times[k] = addedTimes[b];
+                weight = addedWeights[b];
+                b--;
+            }
+            sums[k] = sums[k + 1] + weight;
+        }
+        indexTimes = times;
+        indexSums = sums;
+        indexed = size;
+    }
+
+    /**
+     * Sorts a range of timestamps in ascending order with a merge sort, moving
+     * each event's weight with its timestamp
+     * @param times timestamps to sort
+     * @param weights weight of each timestamp
+     * @param from first position of the range, inclusive
+     * @param to position after the last
+     * @param timesAux scratch space at least as long as times
+     * @param weightsAux scratch space at least as long as weights
+     */
+    private static void sortByTime(long[] times, long[] weights, int from, int to, long[] timesAux,
+            long[] weightsAux) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sortByTime(times, weights, from, mid, timesAux, weightsAux);
+        sortByTime(times, weights, mid, to, timesAux, weightsAux);
+        if (times[mid - 1] <= times[mid]) {
+            return;
+        }
+        System.arraycopy(times, from, timesAux, from, to - from);
+        System.arraycopy(weights, from, weightsAux, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || i < mid && timesAux[i] <= timesAux[j]) {
+                times[k] = timesAux[i];
+                weights[k] = weightsAux[i++];
+            } else {
+                times[k] = timesAux[j];
+                weights[k] = weightsAux[j++];
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the first timestamp after the given time
+     * @param times timestamps in ascending order
+     * @param since time to search for
+     * @return position from 0 to times.length
+     */
+    private static int upperBound(long[] times, long since) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= since) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sums coverage the way the original implementation did, converting the
+     * percent to a double and rounding the running total down after each event
+     *
+     * @param since the time since which to calculate coverage, in epoch seconds
+     * @return the square footage cleaned since the provided time
+     */
+    private int truncatedCoverageSince(long since) {
+        int total = 0;
+        if (offHeapEvents != null) {
+            for (long i = 0; i < offHeapEvents.size(); i++) {
+                if (offHeapEvents.timestamp(i) > since) {
+                    double percent = offHeapEvents.percent(i) / 100.0;
+                    total = (int) (total + areaOf(offHeapEvents.room(i)) * percent);
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (timestamps[i] > since) {
+                double percent = percents[i] / 100.0;
+                total = (int) (total + areaOf(rooms[i]) * percent);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the area of the room at the given index, or 0 if the index does
+     * not refer to a known room
+     * @param room room index
+     * @return area of the room
+     */
+    private int areaOf(int room) {
+        return room < 0 ? 0 : areas[room];
+    }
+}
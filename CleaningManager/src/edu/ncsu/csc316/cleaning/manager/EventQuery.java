@@ -0,0 +1,233 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * EventQuery describes a filter over cleaning events by room ID, timestamp and
+ * percent cleaned. Queries are built with a Builder and run by
+ * CleaningManager.getEvents or CleaningManager.countEvents. All bounds are
+ * inclusive, and a bound that is not set does not filter anything.
+ *
+ * For example, events in guest rooms during May 2021 that were less than half
+ * cleaned:
+ *
+ * <pre>
+ * EventQuery.builder().roomPrefix("Guest")
+ *         .cleanedBetween(LocalDateTime.of(2021, 5, 1, 0, 0), LocalDateTime.of(2021, 5, 31, 23, 59, 59))
+ *         .percentBetween(0, 49).build();
+ * </pre>
+ *
+ * @author Ethan Treece
+ *
+ */
+public class EventQuery {
+
+    /** Room IDs must start with this prefix, or null for any */
+    private final String roomPrefix;
+
+    /** Smallest room ID, or null for no limit */
+    private final String firstRoom;
+
+    /** Largest room ID, or null for no limit */
+    private final String lastRoom;
+
+    /** Earliest timestamp in epoch seconds */
+    private final long fromTime;
+
+    /** Latest timestamp in epoch seconds */
+    private final long toTime;
+
+    /** Smallest percent cleaned */
+    private final int minPercent;
+
+    /** Largest percent cleaned */
+    private final int maxPercent;
+
+    /**
+     * Constructs a new EventQuery from a builder
+     * @param builder builder holding the bounds
+     */
+    private EventQuery(Builder builder) {
+        this.roomPrefix = builder.roomPrefix;
+        this.firstRoom = builder.firstRoom;
+        this.lastRoom = builder.lastRoom;
+        this.fromTime = builder.fromTime;
+        this.toTime = builder.toTime;
+        this.minPercent = builder.minPercent;
+        this.maxPercent = builder.maxPercent;
+    }
+
+    /**
+     * Returns a new builder for a query that matches every event
+     * @return query builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the smallest room ID a matching room can have
+     * @return smallest room ID, or null for no limit
+     */
+    String getLowestRoom() {
+        if (roomPrefix == null) {
+            return firstRoom;
+        }
+        if (firstRoom == null) {
+            return roomPrefix;
+        }
+        return roomPrefix.compareTo(firstRoom) > 0 ? roomPrefix : firstRoom;
+    }
+
+    /**
+     * Returns true if the room ID matches the query's room bounds
+     * @param roomID room ID
+     * @return true if the room matches
+     */
+    boolean matchesRoom(String roomID) {
+        return (roomPrefix == null || roomID.startsWith(roomPrefix))
+                && (firstRoom == null || roomID.compareTo(firstRoom) >= 0)
+                && (lastRoom == null || roomID.compareTo(lastRoom) <= 0);
+    }
+
+    /**
+     * Returns true if a room at or after the given room ID could still match.
+     * Rooms are visited in ascending order, so once this is false the search is
+     * over.
+     * @param roomID room ID
+     * @return true if this or a later room could match
+     */
+    boolean mayMatchFrom(String roomID) {
+        return (roomPrefix == null || roomID.startsWith(roomPrefix))
+                && (lastRoom == null || roomID.compareTo(lastRoom) <= 0);
+    }
+
+    /**
+     * Returns the earliest matching timestamp
+     * @return earliest timestamp in epoch seconds
+     */
+    long getFromTime() {
+        return fromTime;
+    }
+
+    /**
+     * Returns the latest matching timestamp
+     * @return latest timestamp in epoch seconds
+     */
+    long getToTime() {
+        return toTime;
+    }
+
+    /**
+     * Returns true if the query filters on percent cleaned
+     * @return true if there is a percent bound
+     */
+    boolean hasPercentFilter() {
+        return minPercent != Integer.MIN_VALUE || maxPercent != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns true if the percent cleaned matches the query
+     * @param percent percent cleaned
+     * @return true if the percent matches
+     */
+    boolean matchesPercent(int percent) {
+        return percent >= minPercent && percent <= maxPercent;
+    }
+
+    /**
+     * Builder for EventQuery objects
+     * @author Ethan Treece
+     *
+     */
+    public static class Builder {
+
+        /** Room prefix */
+        private String roomPrefix;
+
+        /** Smallest room ID */
+        private String firstRoom;
+
+        /** Largest room ID */
+        private String lastRoom;
+
+        /** Earliest timestamp */
+        private long fromTime = Long.MIN_VALUE;
+
+        /** Latest timestamp */
+        private long toTime = Long.MAX_VALUE;
+
+        /** Smallest percent */
+        private int minPercent = Integer.MIN_VALUE;
+
+        /** Largest percent */
+        private int maxPercent = Integer.MAX_VALUE;
+
+        /**
+         * Constructs a new Builder that matches every event
+         */
+        private Builder() {
+            // Every bound starts unset
+        }
+
+        /**
+         * Matches rooms whose IDs start with the prefix
+         * @param prefix room ID prefix
+         * @return this builder
+         */
+        public Builder roomPrefix(String prefix) {
+            this.roomPrefix = prefix;
+            return this;
+        }
+
+        /**
+         * Matches rooms whose IDs are between first and last, inclusive
+         * @param first smallest room ID, or null for no limit
+         * @param last largest room ID, or null for no limit
+         * @return this builder
+         */
+        public Builder roomsBetween(String first, String last) {
+            this.firstRoom = first;
+            this.lastRoom = last;
+            return this;
+        }
+
+        /**
+         * Matches events cleaned between from and to, inclusive
+         * @param from earliest time, or null for no limit
+         * @param to latest time, or null for no limit
+         * @return this builder
+         */
+        public Builder cleanedBetween(LocalDateTime from, LocalDateTime to) {
+            if (from == null) {
+                this.fromTime = Long.MIN_VALUE;
+            } else {
+                // Log timestamps are whole seconds, so a fractional bound rounds up
+                this.fromTime = from.toEpochSecond(ZoneOffset.UTC) + (from.getNano() > 0 ? 1 : 0);
+            }
+            this.toTime = to == null ? Long.MAX_VALUE : to.toEpochSecond(ZoneOffset.UTC);
+            return this;
+        }
+
+        /**
+         * Matches events with a percent cleaned between min and max, inclusive
+         * @param min smallest percent
+         * @param max largest percent
+         * @return this builder
+         */
+        public Builder percentBetween(int min, int max) {
+            this.minPercent = min;
+            this.maxPercent = max;
+            return this;
+        }
+
+        /**
+         * Returns a query with the bounds set so far
+         * @return the query
+         */
+        public EventQuery build() {
+            return new EventQuery(this);
+        }
+    }
+}
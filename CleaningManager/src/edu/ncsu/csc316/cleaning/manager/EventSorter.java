@@ -0,0 +1,439 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.ncsu.csc316.cleaning.data.RoomRecord;
+import edu.ncsu.csc316.cleaning.factory.DSAFactory;
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.RoomRecordComparator;
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
+import edu.ncsu.csc316.dsa.list.List;
+import edu.ncsu.csc316.dsa.sorter.Sorter;
+
+/**
+ * EventSorter sorts a cleaning log into store order one block of a LogIndex
+ * at a time, so the whole log is never held as CleaningLogEntry objects. Each
+ * block is parsed, its room IDs are replaced by room indexes, and it is sorted
+ * on its own and kept as primitive columns, on the heap or outside it as the
+ * storage mode describes. Once every block is sorted, toStore merges the
+ * blocks into the base run of an EventStore.
+ *
+ * Blocks can be sorted in any order and from several threads at once. As a
+ * block is sorted its events are recorded in the room statistics. Events for
+ * rooms without a room record are dropped, and repeated events are kept.
+ *
+ * Off the heap, the heap only holds the blocks being parsed, but merging needs
+ * direct memory for the sorted blocks and the merged run at the same time, so
+ * about twice the size of the events. The blocks' memory is returned once the
+ * garbage collector collects them.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class EventSorter {
+
+    /** Rooms sorted by room ID */
+    private final RoomRecord[] rooms;
+
+    /** Running totals for each room, recorded as blocks are sorted */
+    private final RoomStatistics statistics;
+
+    /** True to hold sorted events outside the Java heap */
+    private final boolean offHeap;
+
+    /** Sorted events of each block, or null for blocks not sorted yet */
+    private final AtomicReferenceArray<SortedBlock> blocks;
+
+    /**
+     * Constructs a new EventSorter for a log with the provided number of
+     * blocks
+     * @param rooms      room information
+     * @param blockCount number of blocks in the log
+     * @param storage    where sorted events are held in memory
+     */
+    public EventSorter(List<RoomRecord> rooms, int blockCount, StorageMode storage) {
+        this.rooms = new RoomRecord[rooms.size()];
+        int roomCounter = 0;
+        for (RoomRecord r : rooms) {
+            this.rooms[roomCounter++] = r;
+        }
+        Sorter<RoomRecord> roomSorter = DSAFactory.getComparisonSorter(new RoomRecordComparator());
+        roomSorter.sort(this.rooms);
+        this.statistics = new RoomStatistics(this.rooms);
+        this.offHeap = storage == StorageMode.OFF_HEAP;
+        this.blocks = new AtomicReferenceArray<SortedBlock>(blockCount);
+    }
+
+    /**
+     * Sorts every block of a log in turn
+     * @param rooms   room information
+     * @param index   index over the cleaning log
+     * @param storage where sorted events are held in memory
+     * @return a sorter holding every block of the log
+     */
+    public static EventSorter sort(List<RoomRecord> rooms, LogIndex index, StorageMode storage) {
+        EventSorter sorter = new EventSorter(rooms, index.getBlockCount(), storage);
+        for (int b = 0; b < index.getBlockCount(); b++) {
+            sorter.sortBlock(index, b);
+        }
+        return sorter;
+    }
+
+    /**
+     * Parses and sorts one block of the log and records its events in the
+     * room statistics
+     * @param index index over the cleaning log
+     * @param block block number
+     * @throws IllegalStateException if the block has already been sorted
+     */
+    public void sortBlock(LogIndex index, int block) {
+        Columns parsed = new Columns();
+        index.readBlock(block, e -> {
+            int room = statistics.indexOf(e.getRoomID());
+            if (room >= 0) {
+                parsed.add(room, CleaningManager.toEpochSecond(e.getTimestamp()), e.getPercentCompleted());
+            }
+        });
+        Integer[] order = new Integer[parsed.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Sorter<Integer> sorter = DSAFactory.getComparisonSorter((a, b) -> EventStore.compare(parsed.rooms[a],
+                parsed.timestamps[a], parsed.percents[a], parsed.rooms[b], parsed.timestamps[b], parsed.percents[b]));
+        sorter.sort(order);
+        SortedBlock sorted = offHeap ? new DirectBlock(parsed, order) : new HeapBlock(parsed, order);
+        synchronized (statistics) {
+            for (int i = 0; i < parsed.size; i++) {
+                statistics.record(parsed.rooms[i], parsed.timestamps[i], parsed.percents[i]);
+            }
+        }
+        if (!blocks.compareAndSet(block, null, sorted)) {
+            throw new IllegalStateException("Block " + block + " has already been sorted.");
+        }
+    }
+
+    /**
+     * Returns the number of blocks in the log
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return blocks.length();
+    }
+
+    /**
+     * Returns the rooms sorted by room ID. The array is shared, not copied.
+     * @return sorted rooms
+     */
+    RoomRecord[] getRooms() {
+        return rooms;
+    }
+
+    /**
+     * Returns the room statistics, which record the events of every block
+     * sorted so far
+     * @return statistics for each room
+     */
+    public RoomStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Returns a cursor over the sorted events of one block
+     * @param block block number
+     * @return cursor over the block in store order, or null if the block has
+     *         not been sorted or has already been merged
+     */
+    public EventStore.Cursor blockCursor(int block) {
+        SortedBlock sorted = blocks.get(block);
+        return sorted == null ? null : sorted.cursor();
+    }
+
+    /**
+     * Merges every sorted block into the base run of a new event store. The
+     * sorter lets go of its blocks, so this can only be called once.
+     * @param directory directory for run files, or null to use a temporary
+     *                  directory
+     * @return event store holding every event of the log
+     * @throws IllegalStateException if a block has not been sorted
+     */
+    public EventStore toStore(Path directory) {
+        long total = 0;
+        for (int b = 0; b < blocks.length(); b++) {
+            if (blocks.get(b) == null) {
+                throw new IllegalStateException("Block " + b + " has not been sorted.");
+            }
+            total += blocks.get(b).size();
+        }
+        EventStore.Cursor[] sources = new EventStore.Cursor[blocks.length()];
+        for (int b = 0; b < sources.length; b++) {
+            sources[b] = blocks.getAndSet(b, null).cursor();
+        }
+        BlockMerger merged = new BlockMerger(sources);
+        if (offHeap) {
+            OffHeapColumns columns = new OffHeapColumns(total);
+            while (merged.next()) {
+                columns.add(merged.room(), merged.timestamp(), merged.percent());
+            }
+            return new EventStore(columns, directory, EventStore.DEFAULT_BUFFER_LIMIT, EventStore.DEFAULT_MAX_RUNS);
+        }
+        int n = Math.toIntExact(total);
+        int[] r = new int[n];
+        long[] t = new long[n];
+        int[] p = new int[n];
+        for (int i = 0; merged.next(); i++) {
+            r[i] = merged.room();
+            t[i] = merged.timestamp();
+            p[i] = merged.percent();
+        }
+        return new EventStore(r, t, p, directory, EventStore.DEFAULT_BUFFER_LIMIT, EventStore.DEFAULT_MAX_RUNS);
+    }
+
+    /**
+     * Growable heap columns holding a block's events as they are parsed
+     * @author Ethan Treece
+     *
+     */
+    private static class Columns {
+
+        /** Room index of each event */
+        private int[] rooms = new int[64];
+
+        /** Timestamp of each event */
+        private long[] timestamps = new long[64];
+
+        /** Percent of each event */
+        private int[] percents = new int[64];
+
+        /** Number of events */
+        private int size;
+
+        /**
+         * Adds an event to the end of the columns
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         */
+        void add(int room, long timestamp, int percent) {
+            if (size == rooms.length) {
+                rooms = Arrays.copyOf(rooms, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                percents = Arrays.copyOf(percents, size * 2);
+            }
+            rooms[size] = room;
+            timestamps[size] = timestamp;
+            percents[size] = percent;
+            size++;
+        }
+    }
+
+    /**
+     * The sorted events of one block
+     * @author Ethan Treece
+     *
+     */
+    private interface SortedBlock {
+
+        /**
+         * Returns the number of events in the block
+         * @return number of events
+         */
+        int size();
+
+        /**
+         * Returns a cursor over the block in store order
+         * @return cursor over the block
+         */
+        EventStore.Cursor cursor();
+    }
+
+    /**
+     * Sorted block held in arrays on the heap
+     * @author Ethan Treece
+     *
+     */
+    private static class HeapBlock implements SortedBlock {
+
+        /** Room index of each event */
+        private final int[] rooms;
+
+        /** Timestamp of each event */
+        private final long[] timestamps;
+
+        /** Percent of each event */
+        private final int[] percents;
+
+        /**
+         * Constructs a new HeapBlock from parsed events and their sorted order
+         * @param parsed parsed events
+         * @param order positions of the parsed events in store order
+         */
+        HeapBlock(Columns parsed, Integer[] order) {
+            rooms = new int[order.length];
+            timestamps = new long[order.length];
+            percents = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                rooms[i] = parsed.rooms[order[i]];
+                timestamps[i] = parsed.timestamps[order[i]];
+                percents[i] = parsed.percents[order[i]];
+            }
+        }
+
+        @Override
+        public int size() {
+            return rooms.length;
+        }
+
+        @Override
+        public EventStore.Cursor cursor() {
+            return new EventStore.Cursor() {
+                private int index = -1;
+
+                @Override
+                public boolean next() {
+                    if (++index >= rooms.length) {
+                        return false;
+                    }
+                    room = rooms[index];
+                    timestamp = timestamps[index];
+                    percent = percents[index];
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * Sorted block held outside the Java heap in OffHeapColumns
+     * @author Ethan Treece
+     *
+     */
+    private static class DirectBlock implements SortedBlock {
+
+        /** Sorted events */
+        private final OffHeapColumns columns;
+
+        /**
+         * Constructs a new DirectBlock from parsed events and their sorted order
+         * @param parsed parsed events
+         * @param order positions of the parsed events in store order
+         */
+        DirectBlock(Columns parsed, Integer[] order) {
+            columns = new OffHeapColumns(order.length);
+            for (int i : order) {
+                columns.add(parsed.rooms[i], parsed.timestamps[i], parsed.percents[i]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return (int) columns.size();
+        }
+
+        @Override
+        public EventStore.Cursor cursor() {
+            return new EventStore.Cursor() {
+                private long index = -1;
+
+                @Override
+                public boolean next() {
+                    if (++index >= columns.size()) {
+                        return false;
+                    }
+                    room = columns.room(index);
+                    timestamp = columns.timestamp(index);
+                    percent = columns.percent(index);
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * Cursor that merges the cursors of many sorted blocks, keeping the
+     * blocks with a current event in a binary heap. Equal events come out in
+     * block order, so the merge is stable.
+     * @author Ethan Treece
+     *
+     */
+    private static class BlockMerger extends EventStore.Cursor {
+
+        /** Cursors over the blocks */
+        private final EventStore.Cursor[] sources;
+
+        /** Blocks that still have a current event, as a binary min-heap */
+        private final int[] heap;
+
+        /** Number of blocks in the heap */
+        private int size;
+
+        /**
+         * Constructs a new BlockMerger
+         * @param sources cursors over sorted blocks
+         */
+        BlockMerger(EventStore.Cursor[] sources) {
+            this.sources = sources;
+            this.heap = new int[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].next()) {
+                    heap[size++] = i;
+                }
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        @Override
+        public boolean next() {
+            if (size == 0) {
+                return false;
+            }
+            EventStore.Cursor s = sources[heap[0]];
+            room = s.room;
+            timestamp = s.timestamp;
+            percent = s.percent;
+            if (!s.next()) {
+                heap[0] = heap[--size];
+            }
+            siftDown(0);
+            return true;
+        }
+
+        /**
+         * Moves the block at a heap position down until neither child comes
+         * before it
+         * @param position position in the heap
+         */
+        private void siftDown(int position) {
+            int i = position;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], heap[i])) {
+                    return;
+                }
+                int swap = heap[i];
+                heap[i] = heap[child];
+                heap[child] = swap;
+                i = child;
+            }
+        }
+
+        /**
+         * Returns true if the current event of one block comes before the
+         * current event of another
+         * @param a first block
+         * @param b second block
+         * @return true if block a's event comes first
+         */
+        private boolean before(int a, int b) {
+            EventStore.Cursor x = sources[a];
+            EventStore.Cursor y = sources[b];
+            int c = EventStore.compare(x.room, x.timestamp, x.percent, y.room, y.timestamp, y.percent);
+            return c < 0 || c == 0 && a < b;
+        }
+    }
+}
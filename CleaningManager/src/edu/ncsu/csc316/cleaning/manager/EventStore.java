@@ -0,0 +1,1353 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import edu.ncsu.csc316.cleaning.factory.DSAFactory;
+import edu.ncsu.csc316.dsa.map.Map;
+
+/**
+ * EventStore is a log-structured store of cleaning events. New events go into
+ * a sorted in-memory write buffer. When the buffer fills it is written to disk
+ * as an immutable sorted run, and once there are too many runs a background
+ * thread merges the newest runs of similar size together. Events can
+ * therefore arrive late and in any order without the whole log ever being
+ * sorted again.
+ *
+ * Events are stored as a room index, a timestamp in epoch seconds and a
+ * percent cleaned, and are kept in order of room index ascending, then
+ * timestamp descending, then percent ascending. Reads see a merged view of
+ * the buffer and every run, in that order. An event identical to one already
+ * stored is refused by add, but duplicates among the events the store is
+ * constructed with are kept, so the loaded log is reported as it was read.
+ *
+ * Cursors are created under the store's lock, but reading a cursor takes no
+ * lock: runs on disk are read with positional reads on a shared channel. Each
+ * cursor belongs to one thread, and several threads can read their own
+ * cursors at once while compaction runs in the background. A run file stays
+ * open while a cursor over it is being read, even after compaction has merged
+ * it away, so a cursor that is not read to the end must be closed.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class EventStore implements Closeable {
+
+    /** Number of buffered events that triggers a flush to disk */
+    public static final int DEFAULT_BUFFER_LIMIT = 4096;
+
+    /** Number of runs that triggers a background compaction */
+    public static final int DEFAULT_MAX_RUNS = 4;
+
+    /** Size of one event on disk: room index, timestamp and percent */
+    private static final int RECORD_SIZE = 16;
+
+    /** Directory that holds run files, or null until one is needed */
+    private Path directory;
+
+    /** True if the directory was created by this store and should be removed on close */
+    private boolean temporaryDirectory;
+
+    /** Number of buffered events that triggers a flush */
+    private final int bufferLimit;
+
+    /** Number of runs that triggers a compaction */
+    private final int maxRuns;
+
+    /** Write buffer of events not yet on disk */
+    private Map<Event, Event> buffer;
+
+    /** Sorted copy of the write buffer for range lookups, or null if out of date */
+    private MemoryRun bufferRun;
+
+    /** Immutable sorted runs, newest first */
+    private volatile Run[] runs;
+
+    /** Sequence number for naming run files */
+    private int nextRunNumber;
+
+    /** True while a compaction is scheduled or running */
+    private boolean compacting;
+
+    /** True once the store has been closed */
+    private boolean closed;
+
+    /** Single background thread that merges runs */
+    private final ExecutorService compactor;
+
+    /** Events the store was constructed with, if they are held off the heap */
+    private final OffHeapColumns baseColumns;
+
+    /**
+     * Constructs a new EventStore holding the provided events. The event columns
+     * must be sorted in store order. Events with a negative room index are
+     * dropped. The store may keep the arrays, so they must not change
+     * afterwards.
+     *
+     * @param rooms       room index of each event
+     * @param timestamps  timestamp of each event in epoch seconds
+     * @param percents    percent cleaned of each event
+     * @param directory   directory for run files, or null to use a temporary
+     *                    directory that is removed on close
+     * @param bufferLimit number of buffered events that triggers a flush to disk
+     * @param maxRuns     number of runs that triggers a background compaction
+     * @throws IllegalArgumentException if the limits are not positive
+     */
+    public EventStore(int[] rooms, long[] timestamps, int[] percents, Path directory, int bufferLimit, int maxRuns) {
+        this(rooms, timestamps, percents, directory, bufferLimit, maxRuns, false);
+    }
+
+    /**
+     * Constructs a new EventStore holding the provided events, optionally
+     * keeping them outside the Java heap until they are merged into a run on
+     * disk. The event columns must be sorted in store order. Events with a
+     * negative room index are dropped. On the heap the store may keep the
+     * arrays, so they must not change afterwards.
+     *
+     * @param rooms       room index of each event
+     * @param timestamps  timestamp of each event in epoch seconds
+     * @param percents    percent cleaned of each event
+     * @param directory   directory for run files, or null to use a temporary
+     *                    directory that is removed on close
+     * @param bufferLimit number of buffered events that triggers a flush to disk
+     * @param maxRuns     number of runs that triggers a background compaction
+     * @param offHeap     true to hold the provided events in direct memory
+     * @throws IllegalArgumentException if the limits are not positive
+     */
+    public EventStore(int[] rooms, long[] timestamps, int[] percents, Path directory, int bufferLimit, int maxRuns,
+            boolean offHeap) {
+        this(offHeap ? DirectRun.of(rooms, timestamps, percents) : MemoryRun.of(rooms, timestamps, percents),
+                directory, bufferLimit, maxRuns);
+    }
+
+    /**
+     * Constructs a new EventStore over events that are already held outside the
+     * Java heap, sorted in store order. Every event must have a room index of 0
+     * or more. The store takes the columns over as its base run, so they must
+     * not change afterwards.
+     *
+     * @param base        events sorted in store order
+     * @param directory   directory for run files, or null to use a temporary
+     *                    directory that is removed on close
+     * @param bufferLimit number of buffered events that triggers a flush to disk
+     * @param maxRuns     number of runs that triggers a background compaction
+     * @throws IllegalArgumentException if the limits are not positive
+     */
+    public EventStore(OffHeapColumns base, Path directory, int bufferLimit, int maxRuns) {
+        this(new DirectRun(base), directory, bufferLimit, maxRuns);
+    }
+
+    /**
+     * Constructs a new EventStore whose only run is the provided base run
+     *
+     * @param base        run of the events the store starts with
+     * @param directory   directory for run files, or null to use a temporary
+     *                    directory that is removed on close
+     * @param bufferLimit number of buffered events that triggers a flush to disk
+     * @param maxRuns     number of runs that triggers a background compaction
+     * @throws IllegalArgumentException if the limits are not positive
+     */
+    private EventStore(Run base, Path directory, int bufferLimit, int maxRuns) {
+        if (bufferLimit <= 0 || maxRuns <= 0) {
+            throw new IllegalArgumentException("Buffer limit and maximum runs must be greater than 0.");
+        }
+        this.directory = directory;
+        this.bufferLimit = bufferLimit;
+        this.maxRuns = maxRuns;
+        this.buffer = DSAFactory.getMap();
+        this.baseColumns = base instanceof DirectRun ? ((DirectRun) base).columns : null;
+        this.runs = new Run[] {base};
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "event-store-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds an event to the store. Each run on disk is only searched when its
+     * Bloom filter cannot rule the event out.
+     * @param room room index of the event
+     * @param timestamp timestamp of the event in epoch seconds
+     * @param percent percent cleaned
+     * @return true if the event was added, false if an identical event is already stored
+     * @throws UncheckedIOException if the buffer cannot be flushed to disk
+     */
+    public synchronized boolean add(int room, long timestamp, int percent) {
+        checkOpen();
+        Event event = new Event(room, timestamp, percent);
+        if (buffer.get(event) != null) {
+            return false;
+        }
+        for (Run r : runs) {
+            if (r.contains(room, timestamp, percent)) {
+                return false;
+            }
+        }
+        buffer.put(event, event);
+        bufferRun = null;
+        if (buffer.size() >= bufferLimit) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Returns a cursor over every stored event, in store order. The cursor sees the store as it was when the cursor
+     * was created.
+     * @return cursor over the merged view of the store
+     */
+    public synchronized Cursor cursor() {
+        checkOpen();
+        Run[] snapshot = runs;
+        Cursor[] sources = new Cursor[snapshot.length + 1];
+        sources[0] = new BufferCursor(buffer.iterator());
+        for (int i = 0; i < snapshot.length; i++) {
+            sources[i + 1] = snapshot[i].cursor();
+        }
+        return new MergedCursor(sources);
+    }
+
+    /**
+     * Returns a cursor over the events for one room with timestamps in a range,
+     * newest first. The cursor seeks straight to the room's events in the
+     * buffer and in each run, so its cost depends on the number of matches,
+     * not the size of the store.
+     * @param room room index
+     * @param fromTime earliest timestamp in epoch seconds, inclusive
+     * @param toTime latest timestamp in epoch seconds, inclusive
+     * @return cursor over the matching events
+     */
+    public synchronized Cursor cursor(int room, long fromTime, long toTime) {
+        checkOpen();
+        Run[] snapshot = runs;
+        Cursor[] sources = new Cursor[snapshot.length + 1];
+        long[] range = getBufferRun().range(room, fromTime, toTime);
+        sources[0] = getBufferRun().cursor(range[0], range[1]);
+        for (int i = 0; i < snapshot.length; i++) {
+            range = snapshot[i].range(room, fromTime, toTime);
+            sources[i + 1] = snapshot[i].cursor(range[0], range[1]);
+        }
+        return new MergedCursor(sources);
+    }
+
+    /**
+     * Returns a cursor over the events for a range of rooms, in store order.
+     * The cursor seeks once to the first room in the buffer and in each run and
+     * then reads sequentially, so a report over many rooms does not search
+     * again for every room.
+     * @param fromRoom index of the first room, inclusive
+     * @param toRoom index after the last room
+     * @return cursor over the rooms' events
+     */
+    public synchronized Cursor cursor(int fromRoom, int toRoom) {
+        checkOpen();
+        Run[] snapshot = runs;
+        Cursor[] sources = new Cursor[snapshot.length + 1];
+        long[] range = getBufferRun().roomRange(fromRoom, toRoom);
+        sources[0] = getBufferRun().cursor(range[0], range[1]);
+        for (int i = 0; i < snapshot.length; i++) {
+            range = snapshot[i].roomRange(fromRoom, toRoom);
+            sources[i + 1] = snapshot[i].cursor(range[0], range[1]);
+        }
+        return new MergedCursor(sources);
+    }
+
+    /**
+     * Returns the number of events for one room with timestamps in a range
+     * without reading them. An event is only ever stored in one place, so the
+     * count is the sum of the matching block sizes in the buffer and each run.
+     * @param room room index
+     * @param fromTime earliest timestamp in epoch seconds, inclusive
+     * @param toTime latest timestamp in epoch seconds, inclusive
+     * @return number of matching events
+     */
+    public synchronized long count(int room, long fromTime, long toTime) {
+        checkOpen();
+        long[] range = getBufferRun().range(room, fromTime, toTime);
+        long total = range[1] - range[0];
+        for (Run r : runs) {
+            range = r.range(room, fromTime, toTime);
+            total += range[1] - range[0];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the events the store was constructed with when they are held
+     * outside the Java heap. The columns never change, and remain readable
+     * after compaction has merged them into a run on disk, so they can be
+     * scanned in place instead of copied.
+     * @return the base events, or null if they are held on the heap
+     */
+    OffHeapColumns getBaseColumns() {
+        return baseColumns;
+    }
+
+    /**
+     * Returns the number of immutable runs, including the run of events the
+     * store was constructed with
+     * @return number of runs
+     */
+    public int getRunCount() {
+        return runs.length;
+    }
+
+    /**
+     * Flushes the write buffer and merges every run into one, waiting for the
+     * merge to finish
+     * @throws UncheckedIOException if the runs cannot be written
+     */
+    public void compact() {
+        synchronized (this) {
+            checkOpen();
+            if (!buffer.isEmpty()) {
+                flush();
+            }
+        }
+        Future<?> done = compactor.submit(() -> compactRuns(true));
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops background compaction and deletes the run files. A temporary run
+     * directory is removed as well, and off-heap base events are dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Run r : runs) {
+                r.delete();
+            }
+            runs = new Run[0];
+            if (baseColumns != null) {
+                baseColumns.close();
+            }
+            buffer = DSAFactory.getMap();
+            bufferRun = null;
+            if (temporaryDirectory) {
+                directory.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the write buffer to a new run and schedules a compaction if there
+     * are now too many runs. Must be called while holding the store's lock.
+     */
+    private void flush() {
+        FileRun run = FileRun.write(newRunFile(), new BufferCursor(buffer.iterator()), buffer.size());
+        Run[] current = runs;
+        Run[] next = new Run[current.length + 1];
+        next[0] = run;
+        System.arraycopy(current, 0, next, 1, current.length);
+        runs = next;
+        buffer = DSAFactory.getMap();
+        bufferRun = null;
+        if (runs.length > maxRuns && !compacting) {
+            compacting = true;
+            compactor.execute(() -> compactRuns(false));
+        }
+    }
+
+    /**
+     * Merges runs on the background thread. A full compaction merges every
+     * run into one. Otherwise runs are merged by size tier: the two newest
+     * runs are merged together with each older run that is no larger than
+     * the runs taken so far, so small flushed runs are merged with each other
+     * and a large run such as the base is only rewritten once the runs ahead
+     * of it have grown to a comparable size. Runs flushed while the merge is
+     * in progress are kept ahead of the merged run.
+     * @param all true to merge every run
+     */
+    private void compactRuns(boolean all) {
+        Run[] snapshot;
+        synchronized (this) {
+            snapshot = runs;
+            if (closed || snapshot.length <= 1) {
+                compacting = false;
+                return;
+            }
+        }
+        int count = all ? snapshot.length : tier(snapshot);
+        Cursor[] sources = new Cursor[count];
+        long size = 0;
+        for (int i = 0; i < count; i++) {
+            sources[i] = snapshot[i].cursor();
+            size += snapshot[i].size();
+        }
+        FileRun merged;
+        try (Cursor source = new MergedCursor(sources)) {
+            merged = FileRun.write(newRunFile(), source, size);
+        } catch (UncheckedIOException e) {
+            synchronized (this) {
+                compacting = false;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // Newer runs sit at the front, ahead of the snapshot runs
+            Run[] current = runs;
+            int newer = current.length - snapshot.length;
+            Run[] next = new Run[current.length - count + 1];
+            System.arraycopy(current, 0, next, 0, newer);
+            next[newer] = merged;
+            System.arraycopy(current, newer + count, next, newer + 1, current.length - newer - count);
+            runs = next;
+            for (int i = 0; i < count; i++) {
+                snapshot[i].delete();
+            }
+            compacting = false;
+            if (!closed && runs.length > maxRuns) {
+                compacting = true;
+                compactor.execute(() -> compactRuns(false));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of newest runs that form the next size tier to merge
+     * @param snapshot runs, newest first, with at least two runs
+     * @return number of runs to merge, at least two
+     */
+    private static int tier(Run[] snapshot) {
+        int count = 2;
+        long size = snapshot[0].size() + snapshot[1].size();
+        while (count < snapshot.length && snapshot[count].size() <= size) {
+            size += snapshot[count].size();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Waits until no background compaction is scheduled or running
+     */
+    void awaitCompaction() {
+        while (true) {
+            synchronized (this) {
+                if (!compacting) {
+                    return;
+                }
+            }
+            try {
+                compactor.submit(() -> { }).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a new file for a run, creating a temporary directory on first use
+     * @return file for the next run
+     */
+    private synchronized File newRunFile() {
+        try {
+            if (directory == null) {
+                directory = Files.createTempDirectory("cleaning-runs");
+                temporaryDirectory = true;
+            }
+            return directory.resolve("run-" + nextRunNumber++ + ".dat").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the write buffer as a sorted run, building it if the buffer has
+     * changed. Must be called while holding the store's lock.
+     * @return sorted copy of the write buffer
+     */
+    private MemoryRun getBufferRun() {
+        if (bufferRun == null) {
+            bufferRun = MemoryRun.of(buffer);
+        }
+        return bufferRun;
+    }
+
+    /**
+     * Throws an exception if the store has been closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Event store is closed.");
+        }
+    }
+
+    /**
+     * Compares two events in store order: room index ascending, then
+     * timestamp descending, then percent ascending
+     * @param room1 room index of the first event
+     * @param time1 timestamp of the first event
+     * @param percent1 percent of the first event
+     * @param room2 room index of the second event
+     * @param time2 timestamp of the second event
+     * @param percent2 percent of the second event
+     * @return negative, zero or positive as the first event comes before, with or after the second
+     */
+    static int compare(int room1, long time1, int percent1, int room2, long time2, int percent2) {
+        if (room1 != room2) {
+            return Integer.compare(room1, room2);
+        }
+        if (time1 != time2) {
+            return Long.compare(time2, time1);
+        }
+        return Integer.compare(percent1, percent2);
+    }
+
+    /**
+     * Cursor over events in store order. Call next() before reading the first
+     * event. A cursor releases the runs it reads once next() returns false, or
+     * when it is closed.
+     * @author Ethan Treece
+     *
+     */
+    public abstract static class Cursor implements Closeable {
+
+        /** Room index of the current event */
+        int room;
+
+        /** Timestamp of the current event */
+        long timestamp;
+
+        /** Percent of the current event */
+        int percent;
+
+        /**
+         * Moves to the next event
+         * @return false if there are no more events
+         */
+        public abstract boolean next();
+
+        /**
+         * Returns the room index of the current event
+         * @return room index
+         */
+        public int room() {
+            return room;
+        }
+
+        /**
+         * Returns the timestamp of the current event
+         * @return timestamp in epoch seconds
+         */
+        public long timestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the percent cleaned of the current event
+         * @return percent cleaned
+         */
+        public int percent() {
+            return percent;
+        }
+
+        /**
+         * Releases the runs the cursor reads. The cursor must not be read
+         * after it is closed. A cursor read to the end has already released
+         * its runs, and closing again has no effect.
+         */
+        @Override
+        public void close() {
+            // Cursors over memory hold nothing open
+        }
+    }
+
+    /**
+     * A buffered event, ordered in store order
+     * @author Ethan Treece
+     *
+     */
+    private static class Event implements Comparable<Event> {
+
+        /** Room index */
+        private final int room;
+
+        /** Timestamp in epoch seconds */
+        private final long timestamp;
+
+        /** Percent cleaned */
+        private final int percent;
+
+        /**
+         * Constructs a new Event
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         */
+        Event(int room, long timestamp, int percent) {
+            this.room = room;
+            this.timestamp = timestamp;
+            this.percent = percent;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return EventStore.compare(room, timestamp, percent, o.room, o.timestamp, o.percent);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Event)) {
+                return false;
+            }
+            Event o = (Event) obj;
+            return room == o.room && timestamp == o.timestamp && percent == o.percent;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * room + Long.hashCode(timestamp)) + percent;
+        }
+    }
+
+    /**
+     * An immutable sorted run of events
+     * @author Ethan Treece
+     *
+     */
+    private interface Run {
+
+        /**
+         * Returns the number of events in the run
+         * @return number of events
+         */
+        long size();
+
+        /**
+         * Returns the position of the first event that does not come before the
+         * given event in store order
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         * @return position from 0 to size()
+         */
+        long lowerBound(int room, long timestamp, int percent);
+
+        /**
+         * Returns true if the run holds the event
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         * @return true if the event is in the run
+         */
+        boolean contains(int room, long timestamp, int percent);
+
+        /**
+         * Returns a cursor over the events at positions from (inclusive) to to (exclusive)
+         * @param from position of the first event
+         * @param to position after the last event
+         * @return cursor over the events
+         */
+        Cursor cursor(long from, long to);
+
+        /**
+         * Releases the run once it has been merged away
+         */
+        void delete();
+
+        /**
+         * Returns a cursor over the run
+         * @return cursor over the run
+         */
+        default Cursor cursor() {
+            return cursor(0, size());
+        }
+
+        /**
+         * Returns the positions of the events for a room with timestamps in a range.
+         * Events for a room are stored newest first, so they form one block.
+         * @param room room index
+         * @param fromTime earliest timestamp, inclusive
+         * @param toTime latest timestamp, inclusive
+         * @return the first position and the position after the last
+         */
+        default long[] range(int room, long fromTime, long toTime) {
+            long from = lowerBound(room, toTime, Integer.MIN_VALUE);
+            long to = fromTime == Long.MIN_VALUE ? lowerBound(room + 1, Long.MAX_VALUE, Integer.MIN_VALUE)
+                    : lowerBound(room, fromTime - 1, Integer.MIN_VALUE);
+            return new long[] {from, Math.max(from, to)};
+        }
+
+        /**
+         * Returns the positions of the events for a range of rooms
+         * @param fromRoom index of the first room, inclusive
+         * @param toRoom index after the last room
+         * @return the first position and the position after the last
+         */
+        default long[] roomRange(int fromRoom, int toRoom) {
+            long from = lowerBound(fromRoom, Long.MAX_VALUE, Integer.MIN_VALUE);
+            long to = lowerBound(toRoom, Long.MAX_VALUE, Integer.MIN_VALUE);
+            return new long[] {from, Math.max(from, to)};
+        }
+    }
+
+    /**
+     * Run held in memory as sorted columns
+     * @author Ethan Treece
+     *
+     */
+    private static class MemoryRun implements Run {
+
+        /** Room index of each event */
+        private final int[] rooms;
+
+        /** Timestamp of each event */
+        private final long[] timestamps;
+
+        /** Percent of each event */
+        private final int[] percents;
+
+        /**
+         * Constructs a new MemoryRun over sorted columns
+         * @param rooms room index of each event
+         * @param timestamps timestamp of each event
+         * @param percents percent of each event
+         */
+        MemoryRun(int[] rooms, long[] timestamps, int[] percents) {
+            this.rooms = rooms;
+            this.timestamps = timestamps;
+            this.percents = percents;
+        }
+
+        /**
+         * Builds a run from sorted columns, dropping events without a room. If
+         * every event has a room, the run holds the provided arrays.
+         * @param rooms room index of each event
+         * @param timestamps timestamp of each event
+         * @param percents percent of each event
+         * @return run of the remaining events
+         */
+        static MemoryRun of(int[] rooms, long[] timestamps, int[] percents) {
+            boolean complete = true;
+            for (int room : rooms) {
+                complete &= room >= 0;
+            }
+            if (complete) {
+                return new MemoryRun(rooms, timestamps, percents);
+            }
+            int n = 0;
+            int[] r = new int[rooms.length];
+            long[] t = new long[rooms.length];
+            int[] p = new int[rooms.length];
+            for (int i = 0; i < rooms.length; i++) {
+                if (rooms[i] < 0) {
+                    continue;
+                }
+                r[n] = rooms[i];
+                t[n] = timestamps[i];
+                p[n] = percents[i];
+                n++;
+            }
+            if (n < rooms.length) {
+                r = Arrays.copyOf(r, n);
+                t = Arrays.copyOf(t, n);
+                p = Arrays.copyOf(p, n);
+            }
+            return new MemoryRun(r, t, p);
+        }
+
+        /**
+         * Builds a run from the events of a write buffer
+         * @param buffer write buffer
+         * @return run of the buffered events
+         */
+        static MemoryRun of(Map<Event, Event> buffer) {
+            int[] r = new int[buffer.size()];
+            long[] t = new long[buffer.size()];
+            int[] p = new int[buffer.size()];
+            int i = 0;
+            for (Event e : buffer) {
+                r[i] = e.room;
+                t[i] = e.timestamp;
+                p[i] = e.percent;
+                i++;
+            }
+            return new MemoryRun(r, t, p);
+        }
+
+        @Override
+        public long size() {
+            return rooms.length;
+        }
+
+        @Override
+        public long lowerBound(int room, long timestamp, int percent) {
+            int low = 0;
+            int high = rooms.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(rooms[mid], timestamps[mid], percents[mid], room, timestamp, percent) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public boolean contains(int room, long timestamp, int percent) {
+            int i = (int) lowerBound(room, timestamp, percent);
+            return i < rooms.length && compare(rooms[i], timestamps[i], percents[i], room, timestamp, percent) == 0;
+        }
+
+        @Override
+        public Cursor cursor(long from, long to) {
+            return new Cursor() {
+                private int index = (int) from - 1;
+
+                @Override
+                public boolean next() {
+                    if (++index >= to) {
+                        return false;
+                    }
+                    room = rooms[index];
+                    timestamp = timestamps[index];
+                    percent = percents[index];
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public void delete() {
+            // Nothing to release; the columns are collected once unreferenced
+        }
+    }
+
+    /**
+     * Run held outside the Java heap in OffHeapColumns
+     * @author Ethan Treece
+     *
+     */
+    private static class DirectRun implements Run {
+
+        /** Sorted events */
+        private final OffHeapColumns columns;
+
+        /**
+         * Constructs a new DirectRun over sorted columns
+         * @param columns sorted events
+         */
+        DirectRun(OffHeapColumns columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * Builds a run from sorted columns, dropping events without a room
+         * @param rooms room index of each event
+         * @param timestamps timestamp of each event
+         * @param percents percent of each event
+         * @return run of the remaining events
+         */
+        static DirectRun of(int[] rooms, long[] timestamps, int[] percents) {
+            OffHeapColumns columns = new OffHeapColumns();
+            for (int i = 0; i < rooms.length; i++) {
+                if (rooms[i] >= 0) {
+                    columns.add(rooms[i], timestamps[i], percents[i]);
+                }
+            }
+            return new DirectRun(columns);
+        }
+
+        @Override
+        public long size() {
+            return columns.size();
+        }
+
+        @Override
+        public long lowerBound(int room, long timestamp, int percent) {
+            long low = 0;
+            long high = columns.size();
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (compare(columns.room(mid), columns.timestamp(mid), columns.percent(mid), room, timestamp, percent) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public boolean contains(int room, long timestamp, int percent) {
+            long i = lowerBound(room, timestamp, percent);
+            return i < columns.size()
+                    && compare(columns.room(i), columns.timestamp(i), columns.percent(i), room, timestamp, percent) == 0;
+        }
+
+        @Override
+        public Cursor cursor(long from, long to) {
+            return new Cursor() {
+                private long index = from - 1;
+
+                @Override
+                public boolean next() {
+                    if (++index >= to) {
+                        return false;
+                    }
+                    room = columns.room(index);
+                    timestamp = columns.timestamp(index);
+                    percent = columns.percent(index);
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public void delete() {
+            // Cursors may still be reading the columns, so the direct memory is
+            // left for the garbage collector to return once they finish
+        }
+    }
+
+    /**
+     * Run held on disk as fixed-width records. Lookups and cursors read the
+     * file with positional reads on one shared channel, so any number of
+     * threads can read the run at once without taking a lock.
+     * @author Ethan Treece
+     *
+     */
+    private static class FileRun implements Run {
+
+        /** Number of records a cursor reads from the file at a time */
+        private static final int CURSOR_RECORDS = 4096;
+
+        /** File holding the run */
+        private final File file;
+
+        /** Number of events in the run */
+        private final long size;
+
+        /** Open channel shared by lookups and cursors */
+        private final FileChannel channel;
+
+        /** Filter over the run's events, checked before searching the file */
+        private final BloomFilter filter;
+
+        /** Number of cursors that have not finished reading */
+        private int readers;
+
+        /** True once the run has been merged away */
+        private boolean deleted;
+
+        /**
+         * Constructs a new FileRun over an existing run file
+         * @param file file holding the run
+         * @param filter filter holding every event in the file
+         * @throws IOException if the file cannot be opened
+         */
+        FileRun(File file, BloomFilter filter) throws IOException {
+            this.file = file;
+            this.size = file.length() / RECORD_SIZE;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.filter = filter;
+        }
+
+        /**
+         * Writes every event from the cursor to a new run file, adding each
+         * one to the run's filter as it is written
+         * @param file file to write
+         * @param source events in store order
+         * @param expected number of events the cursor will return
+         * @return the new run
+         * @throws UncheckedIOException if the file cannot be written
+         */
+        static FileRun write(File file, Cursor source, long expected) {
+            BloomFilter filter = new BloomFilter(expected);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                while (source.next()) {
+                    out.writeInt(source.room());
+                    out.writeLong(source.timestamp());
+                    out.writeInt(source.percent());
+                    filter.add(source.room(), source.timestamp(), source.percent());
+                }
+            } catch (IOException e) {
+                file.delete();
+                throw new UncheckedIOException(e);
+            }
+            try {
+                return new FileRun(file, filter);
+            } catch (IOException e) {
+                file.delete();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long lowerBound(int room, long timestamp, int percent) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            long low = 0;
+            long high = size;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                record.clear();
+                read(record, mid);
+                if (compare(record.getInt(0), record.getLong(4), record.getInt(12), room, timestamp, percent) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        public boolean contains(int room, long timestamp, int percent) {
+            if (!filter.mightContain(room, timestamp, percent)) {
+                return false;
+            }
+            long i = lowerBound(room, timestamp, percent);
+            if (i >= size) {
+                return false;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            read(record, i);
+            return compare(record.getInt(0), record.getLong(4), record.getInt(12), room, timestamp, percent) == 0;
+        }
+
+        @Override
+        public Cursor cursor(long from, long to) {
+            if (to <= from) {
+                return new MemoryRun(new int[0], new long[0], new int[0]).cursor();
+            }
+            acquire();
+            return new Cursor() {
+                /** Records read from the file but not yet returned */
+                private final ByteBuffer block = ByteBuffer.allocate(
+                        (int) Math.min(to - from, CURSOR_RECORDS) * RECORD_SIZE);
+
+                /** Position of the next record to read from the file */
+                private long position = from;
+
+                /** True once every record has been returned */
+                private boolean done;
+
+                {
+                    block.limit(0);
+                }
+
+                @Override
+                public boolean next() {
+                    if (done) {
+                        return false;
+                    }
+                    if (!block.hasRemaining()) {
+                        if (position >= to) {
+                            done = true;
+                            release();
+                            return false;
+                        }
+                        int records = (int) Math.min(to - position, CURSOR_RECORDS);
+                        block.clear();
+                        block.limit(records * RECORD_SIZE);
+                        read(block, position);
+                        position += records;
+                    }
+                    room = block.getInt();
+                    timestamp = block.getLong();
+                    percent = block.getInt();
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                    if (!done) {
+                        done = true;
+                        release();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public synchronized void delete() {
+            deleted = true;
+            if (readers == 0) {
+                closeChannel();
+            }
+            // Cursors still reading keep the channel open; where the platform
+            // refuses to delete an open file, retry at exit
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+
+        /**
+         * Fills the buffer up to its limit with the records starting at the
+         * given record, then flips it for reading
+         * @param dest buffer to fill
+         * @param record position of the first record
+         * @throws UncheckedIOException if the file cannot be read
+         */
+        private void read(ByteBuffer dest, long record) {
+            long offset = record * RECORD_SIZE;
+            try {
+                while (dest.hasRemaining()) {
+                    int n = channel.read(dest, offset);
+                    if (n < 0) {
+                        throw new EOFException("Run file ended early: " + file);
+                    }
+                    offset += n;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            dest.flip();
+        }
+
+        /**
+         * Records that a cursor has started reading
+         */
+        private synchronized void acquire() {
+            readers++;
+        }
+
+        /**
+         * Records that a cursor has finished reading, closing the channel if
+         * the run has been deleted and this was the last reader
+         */
+        private synchronized void release() {
+            readers--;
+            if (deleted && readers == 0) {
+                closeChannel();
+            }
+        }
+
+        /**
+         * Closes the shared channel
+         */
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The file is being discarded either way
+            }
+        }
+    }
+
+    /**
+     * Cursor over the keys of a write buffer
+     * @author Ethan Treece
+     *
+     */
+    private static class BufferCursor extends Cursor {
+
+        /** Buffered events in store order */
+        private final Iterator<Event> events;
+
+        /**
+         * Constructs a new BufferCursor
+         * @param events buffered events in store order
+         */
+        BufferCursor(Iterator<Event> events) {
+            this.events = events;
+        }
+
+        @Override
+        public boolean next() {
+            if (!events.hasNext()) {
+                return false;
+            }
+            Event e = events.next();
+            room = e.room;
+            timestamp = e.timestamp;
+            percent = e.percent;
+            return true;
+        }
+    }
+
+    /**
+     * Cursor that merges several sorted cursors into one. Events are never
+     * stored in two sources, so nothing is dropped. The number of sources is
+     * small, so the next event is found with a linear scan of the sources'
+     * current events.
+     * @author Ethan Treece
+     *
+     */
+    private static class MergedCursor extends Cursor {
+
+        /** Sources being merged */
+        private final Cursor[] sources;
+
+        /** True for each source that still has a current event */
+        private final boolean[] live;
+
+        /**
+         * Constructs a new MergedCursor
+         * @param sources sorted cursors to merge
+         */
+        MergedCursor(Cursor[] sources) {
+            this.sources = sources;
+            this.live = new boolean[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                live[i] = sources[i].next();
+            }
+        }
+
+        @Override
+        public boolean next() {
+            int min = -1;
+            for (int i = 0; i < sources.length; i++) {
+                if (live[i] && (min < 0 || compare(sources[i].room, sources[i].timestamp, sources[i].percent,
+                        sources[min].room, sources[min].timestamp, sources[min].percent) < 0)) {
+                    min = i;
+                }
+            }
+            if (min < 0) {
+                return false;
+            }
+            Cursor s = sources[min];
+            room = s.room;
+            timestamp = s.timestamp;
+            percent = s.percent;
+            live[min] = s.next();
+            return true;
+        }
+
+        @Override
+        public void close() {
+            Arrays.fill(live, false);
+            for (Cursor s : sources) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * Bloom filter over the events of a run. It answers whether an event
+     * might be in the run with no false negatives, so add only searches a run
+     * file when the filter cannot rule the event out. The bits are held
+     * outside the Java heap, like the runs' events.
+     * @author Ethan Treece
+     *
+     */
+    private static class BloomFilter {
+
+        /** Bits per expected event, for about a one percent false positive rate */
+        private static final int BITS_PER_EVENT = 10;
+
+        /** Number of bits set for each event */
+        private static final int HASHES = 7;
+
+        /** Filter bits, 64 to a word */
+        private final LongBuffer bits;
+
+        /** Number of bits in the filter */
+        private final long bitCount;
+
+        /**
+         * Constructs an empty BloomFilter sized for a number of events
+         * @param expected number of events that will be added
+         */
+        BloomFilter(long expected) {
+            long words = Math.max(1, (Math.max(expected, 1) * BITS_PER_EVENT + 63) / 64);
+            this.bits = ByteBuffer.allocateDirect(Math.toIntExact(words * Long.BYTES)).asLongBuffer();
+            this.bitCount = words * 64;
+        }
+
+        /**
+         * Adds an event to the filter
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         */
+        void add(int room, long timestamp, int percent) {
+            long hash = hash(room, timestamp, percent);
+            int step = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Long.remainderUnsigned(hash + (long) i * step, bitCount);
+                int word = (int) (bit >>> 6);
+                bits.put(word, bits.get(word) | 1L << bit);
+            }
+        }
+
+        /**
+         * Returns false if the event was never added to the filter
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         * @return true if the event might have been added
+         */
+        boolean mightContain(int room, long timestamp, int percent) {
+            long hash = hash(room, timestamp, percent);
+            int step = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                long bit = Long.remainderUnsigned(hash + (long) i * step, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Mixes the fields of an event into a 64-bit hash
+         * @param room room index
+         * @param timestamp timestamp in epoch seconds
+         * @param percent percent cleaned
+         * @return hash of the event
+         */
+        private static long hash(int room, long timestamp, int percent) {
+            long h = timestamp * 0x9E3779B97F4A7C15L + ((long) room << 32 | percent & 0xFFFFFFFFL);
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            return h ^ h >>> 33;
+        }
+    }
+}
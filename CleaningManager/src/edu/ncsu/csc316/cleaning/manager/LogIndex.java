@@ -0,0 +1,270 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+import edu.ncsu.csc316.cleaning.data.CleaningLogEntry;
+
+/**
+ * LogIndex is a sparse index over a cleaning log file. The file is divided
+ * into blocks of roughly equal size, and the index records the offset of the
+ * first line in each block. Building the index reads only a few bytes near
+ * each block boundary, so it takes about the same time for any size of file,
+ * and each block can then be parsed on its own in any order.
+ *
+ * Lines are split and parsed exactly as InputReader.readLogFile does it, and
+ * fail with the same exceptions. The first line of the file is a header, and
+ * an empty file has no header. Lines end at any line separator a Scanner
+ * recognizes. Each following line is read with a Scanner delimited by commas:
+ * a timestamp, a room ID and a whole number percent, with any later fields
+ * ignored. Blocks only start after a carriage return or line feed, so no line
+ * is ever split between two blocks.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class LogIndex {
+
+    /**
+     * Default size of a block in bytes. Blocks are small enough that the text
+     * of a block being parsed on each core is a few megabytes of heap.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /** Number of bytes read at a time while looking for the end of a line */
+    private static final int SCAN_SIZE = 256;
+
+    /** Format of the timestamps in the log file */
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss");
+
+    /** Path to the log file */
+    private final String path;
+
+    /** Offset of the first line of each block, followed by the file length */
+    private final long[] offsets;
+
+    /**
+     * Constructs a new LogIndex over the provided cleaning log file
+     * @param pathToLogFile the path to the file that contains cleaning event log
+     *                      information
+     * @param blockSize     the approximate number of bytes in each block
+     * @throws FileNotFoundException if the file cannot be read
+     * @throws NoSuchElementException if the file is empty, so it has no header
+     * @throws IllegalArgumentException if the block size is not positive
+     */
+    public LogIndex(String pathToLogFile, int blockSize) throws FileNotFoundException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than 0.");
+        }
+        this.path = pathToLogFile;
+        try (RandomAccessFile file = new RandomAccessFile(pathToLogFile, "r")) {
+            long length = file.length();
+            if (length == 0) {
+                // The header is read eagerly, as Scanner.nextLine does
+                throw new NoSuchElementException("No line found");
+            }
+            // The first block holds the header, which readBlock skips
+            long[] found = new long[(int) Math.min(length / blockSize + 2, Integer.MAX_VALUE - 8)];
+            int count = 1;
+            for (long target = blockSize; target < length; target += blockSize) {
+                long next = nextLine(file, target);
+                if (next >= length) {
+                    break;
+                }
+                // A line longer than a block is found again from the next target
+                if (next > found[count - 1]) {
+                    found[count++] = next;
+                }
+            }
+            offsets = Arrays.copyOf(found, count + 1);
+            offsets[count] = length;
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of blocks in the file
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the offset of the first line of a block
+     * @param block block number
+     * @return offset in bytes from the start of the file
+     */
+    public long getBlockStart(int block) {
+        return offsets[block];
+    }
+
+    /**
+     * Reads and parses the lines of a block. The header is skipped in the
+     * first block.
+     * @param block block number
+     * @return the block's cleaning log events, in file order
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws NoSuchElementException if a line is missing a field
+     * @throws java.util.InputMismatchException if a percent is not a whole
+     *         number
+     * @throws java.time.format.DateTimeParseException if a timestamp is not in
+     *         the format MM/dd/yyyy HH:mm:ss
+     */
+    public CleaningLogEntry[] readBlock(int block) {
+        CleaningLogEntry[][] entries = {new CleaningLogEntry[16]};
+        int[] count = {0};
+        readBlock(block, e -> {
+            if (count[0] == entries[0].length) {
+                entries[0] = Arrays.copyOf(entries[0], count[0] * 2);
+            }
+            entries[0][count[0]++] = e;
+        });
+        return Arrays.copyOf(entries[0], count[0]);
+    }
+
+    /**
+     * Reads the lines of a block and passes each parsed event to the provided
+     * action as soon as its line is parsed, so the block's events never have to
+     * be held together. The header is skipped in the first block.
+     * @param block block number
+     * @param action action to perform on each cleaning log event, in file order
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws NoSuchElementException if a line is missing a field
+     * @throws java.util.InputMismatchException if a percent is not a whole
+     *         number
+     * @throws java.time.format.DateTimeParseException if a timestamp is not in
+     *         the format MM/dd/yyyy HH:mm:ss
+     */
+    public void readBlock(int block, Consumer<CleaningLogEntry> action) {
+        byte[] bytes = new byte[(int) (offsets[block + 1] - offsets[block])];
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            file.seek(offsets[block]);
+            file.readFully(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int lineStart = 0;
+        boolean header = block == 0;
+        while (lineStart < text.length()) {
+            int lineEnd = lineStart;
+            while (lineEnd < text.length() && !isLineSeparator(text.charAt(lineEnd))) {
+                lineEnd++;
+            }
+            if (header) {
+                header = false;
+            } else {
+                action.accept(parseLine(text.substring(lineStart, lineEnd)));
+            }
+            // A carriage return and line feed together end a single line
+            boolean pair = text.startsWith("\r\n", lineEnd);
+            lineStart = lineEnd + (pair ? 2 : 1);
+        }
+    }
+
+    /**
+     * Parses one line of the log file the same way as InputReader. A line
+     * whose first two fields are not empty and whose percent is plain ASCII
+     * digits, with an optional minus sign, is split on its commas directly.
+     * Any other line is read with a Scanner, as InputReader reads it, so
+     * unusual lines parse or fail exactly as they would there.
+     * @param line the line, without its line separator
+     * @return the cleaning log event on the line
+     */
+    private static CleaningLogEntry parseLine(String line) {
+        int first = line.indexOf(',');
+        int second = first <= 0 ? -1 : line.indexOf(',', first + 1);
+        if (second > first + 1) {
+            int end = line.indexOf(',', second + 1);
+            if (end < 0) {
+                end = line.length();
+            }
+            if (isPlainInteger(line, second + 1, end)) {
+                return new CleaningLogEntry(LocalDateTime.parse(line.substring(0, first), FORMAT),
+                        line.substring(first + 1, second), Integer.parseInt(line, second + 1, end, 10));
+            }
+        }
+        Scanner fields = new Scanner(line).useDelimiter(",");
+        LocalDateTime timestamp = LocalDateTime.parse(fields.next(), FORMAT);
+        String roomID = fields.next();
+        int percent = fields.nextInt();
+        fields.close();
+        return new CleaningLogEntry(timestamp, roomID, percent);
+    }
+
+    /**
+     * Returns true if a range of a line is an optional minus sign followed by
+     * one to nine ASCII digits, which always fits in an int
+     * @param line the line
+     * @param from first character of the range
+     * @param to character after the range
+     * @return true if Integer.parseInt reads the range as a Scanner would
+     */
+    private static boolean isPlainInteger(String line, int from, int to) {
+        if (from < to && line.charAt(from) == '-') {
+            from++;
+        }
+        if (to - from < 1 || to - from > 9) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a character ends a line for a Scanner
+     * @param c the character
+     * @return true if the character is a line separator
+     */
+    private static boolean isLineSeparator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
+    }
+
+    /**
+     * Returns the offset of the line after the one containing the provided
+     * offset. Only carriage returns and line feeds are looked for, and a
+     * carriage return followed by a line feed ends a single line.
+     * @param file the log file
+     * @param from offset to search from
+     * @return offset of the next line, or the file length if there is none
+     * @throws IOException if the file cannot be read
+     */
+    private static long nextLine(RandomAccessFile file, long from) throws IOException {
+        byte[] scan = new byte[SCAN_SIZE];
+        long position = from;
+        file.seek(position);
+        int read;
+        while ((read = file.read(scan)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (scan[i] == '\n') {
+                    return position + i + 1;
+                }
+                if (scan[i] == '\r') {
+                    long end = position + i + 1;
+                    file.seek(end);
+                    return file.read() == '\n' ? end + 1 : end;
+                }
+            }
+            position += read;
+        }
+        return position;
+    }
+}
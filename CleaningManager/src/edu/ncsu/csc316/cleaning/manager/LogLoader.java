@@ -0,0 +1,330 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.ncsu.csc316.cleaning.io.InputReader;
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
+
+/**
+ * LogLoader builds a CleaningManager in the background. Construction only
+ * checks that the files can be read and builds a sparse LogIndex over the
+ * cleaning log, so it returns almost immediately for any size of log. The
+ * blocks of the log are then parsed and sorted in parallel on the common
+ * fork-join pool by an EventSorter and merged into the manager's event store,
+ * and get waits until the manager is ready. The heap only holds the blocks
+ * being parsed, plus the sorted events if they are held on the heap.
+ *
+ * While the log is loading, coverageReaches can answer from the blocks parsed
+ * so far whether some amount of area has already been cleaned. The room
+ * statistics are recorded as each block is sorted, so getStatistics is ready
+ * once every block has been parsed, before the blocks are merged into the
+ * event store.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class LogLoader implements Closeable {
+
+    /**
+     * Largest number of parsed events coverageReaches looks at before giving
+     * up, counting events at or before the time asked about as well as those
+     * after it
+     */
+    private static final int EARLY_SCAN_LIMIT = 1 << 16;
+
+    /** Path to the room file */
+    private final String pathToRoomFile;
+
+    /** Sparse index over the cleaning log */
+    private final LogIndex index;
+
+    /** Directory for run files, or null to use a temporary directory */
+    private final Path runDirectory;
+
+    /** Where cleaning events are held once loaded */
+    private final StorageMode storage;
+
+    /** Sorter for the blocks of the log, or null until the room file is read */
+    private volatile EventSorter sorter;
+
+    /** True once loading should stop */
+    private volatile boolean cancelled;
+
+    /** Statistics of every room, complete once every block is parsed */
+    private final CompletableFuture<RoomStatistics> parsed;
+
+    /** Manager built from the files */
+    private final CompletableFuture<CleaningManager> loaded;
+
+    /**
+     * Constructs a new LogLoader and starts loading the provided files in the
+     * background
+     *
+     * @param pathToRoomFile the path to the file that contains room information
+     * @param pathToLogFile  the path to the file that contains cleaning event log
+     *                       information
+     * @param runDirectory   the directory for run files, or null to use a
+     *                       temporary directory
+     * @param storage        where cleaning events are held in memory
+     * @throws FileNotFoundException if either the room file or the cleaning event
+     *                               log file cannot be read
+     * @throws java.util.NoSuchElementException if the cleaning event log file is
+     *                                          empty
+     */
+    public LogLoader(String pathToRoomFile, String pathToLogFile, Path runDirectory, StorageMode storage)
+            throws FileNotFoundException {
+        this(pathToRoomFile, pathToLogFile, runDirectory, storage, LogIndex.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs a new LogLoader that parses the cleaning log in blocks of the
+     * provided size, and starts loading the files in the background
+     *
+     * @param pathToRoomFile the path to the file that contains room information
+     * @param pathToLogFile  the path to the file that contains cleaning event log
+     *                       information
+     * @param runDirectory   the directory for run files, or null to use a
+     *                       temporary directory
+     * @param storage        where cleaning events are held in memory
+     * @param blockSize      the approximate number of bytes in each block
+     * @throws FileNotFoundException if either the room file or the cleaning event
+     *                               log file cannot be read
+     * @throws java.util.NoSuchElementException if the cleaning event log file is
+     *                                          empty
+     */
+    LogLoader(String pathToRoomFile, String pathToLogFile, Path runDirectory, StorageMode storage, int blockSize)
+            throws FileNotFoundException {
+        // Missing files are reported now, as the CleaningManager constructor does
+        try {
+            new FileInputStream(pathToRoomFile).close();
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.pathToRoomFile = pathToRoomFile;
+        this.index = new LogIndex(pathToLogFile, blockSize);
+        this.runDirectory = runDirectory;
+        this.storage = storage;
+        this.parsed = new CompletableFuture<RoomStatistics>();
+        this.loaded = new CompletableFuture<CleaningManager>();
+        Thread t = new Thread(this::load, "cleaning-log-loader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Returns the manager, waiting for loading to finish if needed
+     * @return the loaded manager
+     * @throws IllegalStateException if the loader was closed before loading
+     *                               finished
+     */
+    public CleaningManager get() {
+        return join(loaded);
+    }
+
+    /**
+     * Returns the statistics of every room, waiting only until every block of
+     * the log has been parsed. The statistics are the ones the manager will
+     * use, so they do not wait for the sorted blocks to be merged.
+     * @return statistics for each room
+     * @throws IllegalStateException if the loader was closed before the log
+     *                               was parsed
+     */
+    public RoomStatistics getStatistics() {
+        return join(parsed);
+    }
+
+    /**
+     * Waits for a result of loading, rethrowing the exception that stopped it
+     * @param <T> type of the result
+     * @param result result to wait for
+     * @return the result
+     * @throws IllegalStateException if the loader was closed before the result
+     *                               was ready
+     */
+    private static <T> T join(CompletableFuture<T> result) {
+        try {
+            return result.join();
+        } catch (CancellationException e) {
+            throw new IllegalStateException("Loader is closed.");
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Cleaning log could not be loaded.", cause);
+        }
+    }
+
+    /**
+     * Returns true if loading has finished, successfully or not
+     * @return true if get will not wait
+     */
+    public boolean isLoaded() {
+        return loaded.isDone();
+    }
+
+    /**
+     * Returns true if the events parsed so far already show that at least the
+     * provided square footage was cleaned strictly after the provided time.
+     * Because coverage only grows as more events are parsed, a true result is
+     * final. A false result means the answer is not known yet.
+     *
+     * @param since the time since which to calculate coverage, in epoch seconds
+     * @param squareFeet the square footage to look for
+     * @return true if the square footage has been reached
+     */
+    public boolean coverageReaches(long since, int squareFeet) {
+        EventSorter blocks = sorter;
+        return blocks != null && coverageReaches(blocks, since, squareFeet);
+    }
+
+    /**
+     * Returns true if the sorted blocks show that at least the provided square
+     * footage was cleaned strictly after the provided time. Blocks that are
+     * not sorted yet are skipped, and the answer is false if more than a fixed
+     * number of events would have to be looked at.
+     *
+     * @param sorter sorter holding the blocks sorted so far
+     * @param since the time since which to calculate coverage, in epoch seconds
+     * @param squareFeet the square footage to look for
+     * @return true if the square footage has been reached
+     */
+    static boolean coverageReaches(EventSorter sorter, long since, int squareFeet) {
+        int[] areas = sorter.getStatistics().getAreas();
+        long target = squareFeet * 100L;
+        long sum = 0;
+        int scanned = 0;
+        for (int b = 0; b < sorter.getBlockCount(); b++) {
+            EventStore.Cursor c = sorter.blockCursor(b);
+            while (c != null && c.next()) {
+                if (++scanned > EARLY_SCAN_LIMIT) {
+                    return false;
+                }
+                if (c.timestamp() <= since) {
+                    continue;
+                }
+                if (c.percent() < 0) {
+                    return false;
+                }
+                // Repeated lines count each time, as the event store keeps them
+                sum += (long) areas[c.room()] * c.percent();
+                if (sum >= target) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops loading and closes the manager if it was built. Waits for any
+     * block being parsed to finish.
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        CleaningManager manager;
+        try {
+            manager = loaded.join();
+        } catch (CancellationException | CompletionException e) {
+            // Nothing was built, so there is nothing to release
+            return;
+        }
+        manager.close();
+    }
+
+    /**
+     * Reads the room file, parses every block of the log and builds the
+     * manager. Runs on the loader thread.
+     */
+    private void load() {
+        try {
+            EventSorter blocks = new EventSorter(InputReader.readRoomFile(pathToRoomFile), index.getBlockCount(),
+                    storage);
+            sorter = blocks;
+            ForkJoinPool.commonPool().invoke(new ParseTask(blocks, 0, blocks.getBlockCount()));
+            checkCancelled();
+            parsed.complete(blocks.getStatistics());
+            loaded.complete(new CleaningManager(blocks, runDirectory));
+        } catch (CancellationException e) {
+            parsed.cancel(false);
+            loaded.cancel(false);
+        } catch (FileNotFoundException | RuntimeException e) {
+            parsed.completeExceptionally(e);
+            loaded.completeExceptionally(e);
+        } catch (Error e) {
+            parsed.completeExceptionally(e);
+            loaded.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Throws an exception if loading should stop
+     * @throws CancellationException if the loader has been closed
+     */
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Loader is closed.");
+        }
+    }
+
+    /**
+     * Fork-join task that parses and sorts a range of blocks, splitting the
+     * range in half until a single block is left
+     * @author Ethan Treece
+     *
+     */
+    private class ParseTask extends RecursiveAction {
+
+        /** Serial version UID */
+        private static final long serialVersionUID = 1L;
+
+        /** Sorter that keeps the sorted blocks */
+        private final EventSorter blocks;
+
+        /** First block to parse */
+        private final int fromBlock;
+
+        /** Block after the last block to parse */
+        private final int toBlock;
+
+        /**
+         * Constructs a new ParseTask
+         * @param blocks sorter that keeps the sorted blocks
+         * @param fromBlock first block to parse
+         * @param toBlock block after the last block to parse
+         */
+        ParseTask(EventSorter blocks, int fromBlock, int toBlock) {
+            this.blocks = blocks;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBlock - fromBlock > 1) {
+                int mid = (fromBlock + toBlock) >>> 1;
+                invokeAll(new ParseTask(blocks, fromBlock, mid), new ParseTask(blocks, mid, toBlock));
+            } else if (toBlock > fromBlock) {
+                checkCancelled();
+                blocks.sortBlock(index, fromBlock);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * OffHeapColumns holds cleaning events outside the Java heap as fixed-width
+ * records in direct byte buffers. Each record is a timestamp in epoch seconds,
+ * a room index and a percent cleaned. Records are split across segments so
+ * the number of events is not limited by the size of a single buffer, and
+ * the heap only holds one small object per segment.
+ *
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size. After close the records can no longer be read, and the
+ * memory is returned once the buffers are garbage collected.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class OffHeapColumns implements Closeable {
+
+    /** Size of one record in bytes */
+    static final int RECORD_SIZE = 16;
+
+    /** Offset of the timestamp within a record */
+    static final int TIMESTAMP_OFFSET = 0;
+
+    /** Offset of the room index within a record */
+    static final int ROOM_OFFSET = 8;
+
+    /** Offset of the percent within a record */
+    static final int PERCENT_OFFSET = 12;
+
+    /** Number of records in each segment, 64 MB of records */
+    static final int RECORDS_PER_SEGMENT = 1 << 22;
+
+    /** Number of records the first segment starts with */
+    private static final int INITIAL_RECORDS = 1024;
+
+    /** Segments holding the records, or null once closed */
+    private ByteBuffer[] segments;
+
+    /** Number of records */
+    private long size;
+
+    /**
+     * Constructs a new, empty OffHeapColumns
+     */
+    public OffHeapColumns() {
+        segments = new ByteBuffer[0];
+    }
+
+    /**
+     * Constructs a new, empty OffHeapColumns with room for the provided number
+     * of records, so adding them never copies a segment. More records can
+     * still be added after that.
+     * @param capacity number of records to allocate room for
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public OffHeapColumns(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        }
+        segments = new ByteBuffer[(int) ((capacity + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT)];
+        for (int s = 0; s < segments.length; s++) {
+            segments[s] = allocate((int) Math.min(RECORDS_PER_SEGMENT, capacity - (long) s * RECORDS_PER_SEGMENT));
+        }
+    }
+
+    /**
+     * Adds a record to the end of the columns
+     * @param room room index
+     * @param timestamp timestamp in epoch seconds
+     * @param percent percent cleaned
+     */
+    public void add(int room, long timestamp, int percent) {
+        checkOpen();
+        int segment = (int) (size / RECORDS_PER_SEGMENT);
+        int offset = offset(size);
+        if (segment == segments.length) {
+            segments = Arrays.copyOf(segments, segment + 1);
+            segments[segment] = allocate(Math.min(INITIAL_RECORDS, RECORDS_PER_SEGMENT));
+        } else if (offset == segments[segment].capacity()) {
+            // The last segment grows by doubling until it is full size
+            ByteBuffer grown = allocate(Math.min(offset / RECORD_SIZE * 2, RECORDS_PER_SEGMENT));
+            ByteBuffer old = segments[segment].duplicate();
+            old.clear();
+            grown.put(old);
+            segments[segment] = grown;
+        }
+        ByteBuffer b = segments[segment];
+        b.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        b.putInt(offset + ROOM_OFFSET, room);
+        b.putInt(offset + PERCENT_OFFSET, percent);
+        size++;
+    }
+
+    /**
+     * Returns the number of records
+     * @return number of records
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the room index of a record
+     * @param index position of the record
+     * @return room index
+     */
+    public int room(long index) {
+        return segment(index).getInt(offset(index) + ROOM_OFFSET);
+    }
+
+    /**
+     * Returns the timestamp of a record
+     * @param index position of the record
+     * @return timestamp in epoch seconds
+     */
+    public long timestamp(long index) {
+        return segment(index).getLong(offset(index) + TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Returns the percent cleaned of a record
+     * @param index position of the record
+     * @return percent cleaned
+     */
+    public int percent(long index) {
+        return segment(index).getInt(offset(index) + PERCENT_OFFSET);
+    }
+
+    /**
+     * Returns the number of segments
+     * @return number of segments
+     */
+    int getSegmentCount() {
+        checkOpen();
+        return segments.length;
+    }
+
+    /**
+     * Returns a segment for scanning. Every segment but the last is full.
+     * @param segment segment number
+     * @return buffer holding the segment's records
+     */
+    ByteBuffer getSegment(int segment) {
+        checkOpen();
+        return segments[segment];
+    }
+
+    /**
+     * Returns the number of records in a segment
+     * @param segment segment number
+     * @return number of records
+     */
+    int getSegmentSize(int segment) {
+        return (int) Math.min(RECORDS_PER_SEGMENT, size - (long) segment * RECORDS_PER_SEGMENT);
+    }
+
+    /**
+     * Drops the references to the records' buffers. Reading or adding records
+     * afterwards throws an IllegalStateException. The direct memory itself is
+     * returned when the garbage collector collects the buffers.
+     */
+    @Override
+    public void close() {
+        segments = null;
+        size = 0;
+    }
+
+    /**
+     * Returns the segment holding a record
+     * @param index position of the record
+     * @return the record's segment
+     */
+    private ByteBuffer segment(long index) {
+        checkOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return segments[(int) (index / RECORDS_PER_SEGMENT)];
+    }
+
+    /**
+     * Allocates a direct buffer for a segment
+     * @param records number of records the buffer holds
+     * @return the buffer, in native byte order
+     */
+    private static ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns the byte offset of a record within its segment
+     * @param index position of the record
+     * @return byte offset
+     */
+    private static int offset(long index) {
+        return (int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+    }
+
+    /**
+     * Throws an exception if the columns have been closed
+     */
+    private void checkOpen() {
+        if (segments == null) {
+            throw new IllegalStateException("Off-heap columns are closed.");
+        }
+    }
+}
@@ -1,36 +1,47 @@
 package edu.ncsu.csc316.cleaning.manager;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import edu.ncsu.csc316.cleaning.data.CleaningLogEntry;
 import edu.ncsu.csc316.cleaning.factory.DSAFactory;
-import edu.ncsu.csc316.dsa.list.List;
-import edu.ncsu.csc316.dsa.map.Map;
-import edu.ncsu.csc316.dsa.map.Map.Entry;
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
+import edu.ncsu.csc316.cleaning.manager.CoverageKernel.CoverageMode;
 import edu.ncsu.csc316.dsa.sorter.Sorter;
 
 
 /**
  * ReportManager handles behaviors associated with generating String reports for
  * the user interface, including (1) vacuum bag reports, (2) frequency reports,
- * and (3) room reports.
+ * (3) room reports, and (4) stalest rooms reports.
  * 
  * @author Dr. King
  * @author Ethan Treece
  *
  */
-public class ReportManager {
+public class ReportManager implements Closeable {
 
     /** Date format */
     public static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss");
     
-    /** Manager */
+    /** Indent before each cleaning event in the room report */
+    private static final String EVENT_INDENT = "      ";
+    
+    /** Number of rooms rendered by each task of the room report */
+    static final int ROOMS_PER_CHUNK = 1024;
+    
+    /** Manager, or null until a lazy loader has finished */
     private CleaningManager manager;
+    
+    /** Loader building the manager in the background, or null if loaded eagerly */
+    private LogLoader loader;
+    
+    /** True once the report manager has been closed */
+    private boolean closed;
 
     /**
      * Constructs a new ReportManager for building reports of cleaning history
@@ -44,7 +55,54 @@ public class ReportManager {
      *                               log file cannot be read
      */
     public ReportManager(String pathToRoomFile, String pathToLogFile) throws FileNotFoundException {
-        manager = new CleaningManager(pathToRoomFile, pathToLogFile);
+        this(pathToRoomFile, pathToLogFile, StorageMode.HEAP);
+    }
+
+    /**
+     * Constructs a new ReportManager for building reports of cleaning history
+     * information from the provided file with room information and the provided
+     * file with cleaning log event information, holding cleaning events as the
+     * storage mode describes.
+     * 
+     * @param pathToRoomFile the path to the file that contains room information
+     * @param pathToLogFile  the path to the file that contains cleaning event log
+     *                       information
+     * @param storage        where cleaning events are held in memory
+     * @throws FileNotFoundException if either the room file or the cleaning event
+     *                               log file cannot be read
+     */
+    public ReportManager(String pathToRoomFile, String pathToLogFile, StorageMode storage)
+            throws FileNotFoundException {
+        manager = new CleaningManager(pathToRoomFile, pathToLogFile, null, storage);
+    }
+
+    /**
+     * Constructs a new ReportManager for building reports of cleaning history
+     * information from the provided file with room information and the provided
+     * file with cleaning log event information. If lazy is true, the files are
+     * loaded in the background and each report waits only as long as it needs
+     * to, so the constructor returns before the log has been parsed. The log is
+     * read with the same grammar either way, and a bad line throws the same
+     * exception, but when loading lazily it is thrown by the first report that
+     * needs the line. A vacuum bag report that is already full from the lines
+     * before it does not wait for it, and the frequency and stalest rooms
+     * reports only wait for the log to be parsed.
+     * 
+     * @param pathToRoomFile the path to the file that contains room information
+     * @param pathToLogFile  the path to the file that contains cleaning event log
+     *                       information
+     * @param storage        where cleaning events are held in memory
+     * @param lazy           true to load the files in the background
+     * @throws FileNotFoundException if either the room file or the cleaning event
+     *                               log file cannot be read
+     */
+    public ReportManager(String pathToRoomFile, String pathToLogFile, StorageMode storage, boolean lazy)
+            throws FileNotFoundException {
+        if (lazy) {
+            loader = new LogLoader(pathToRoomFile, pathToLogFile, null, storage);
+        } else {
+            manager = new CleaningManager(pathToRoomFile, pathToLogFile, null, storage);
+        }
     }
 
     /**
@@ -56,9 +114,10 @@ public class ReportManager {
      *         until a vacuum bag change is recommended
      */
     public String getVacuumBagReport(String timestamp) {
-        LocalDateTime dateTime = null;
+        checkOpen();
+        long dateTime = 0;
         try {
-            dateTime = LocalDateTime.parse(timestamp, DATE_TIME_FORMAT);
+            dateTime = TimestampCodec.parse(timestamp);
         } catch (DateTimeParseException e) {
             return "Date & time must be in the format: MM/DD/YYYY HH:MM:SS";
         }
@@ -67,7 +126,9 @@ public class ReportManager {
         buf.append(timestamp);
         buf.append(") [\n");
         
-        int coverage = manager.getCoverageSince(dateTime);
+        // While the log is loading, the events parsed so far may already show the bag is full
+        boolean full = manager == null && loader.coverageReaches(dateTime, 5280);
+        int coverage = full ? 5280 : getManager().getCoverageSince(dateTime, CoverageMode.EXACT);
         
         if (coverage >= 5280) {
             buf.append("   Bag is overdue for replacement!\n]");
@@ -88,37 +149,84 @@ public class ReportManager {
      * @return a report of the top X rooms cleaned
      */
     public String getFrequencyReport(int number) {
+        checkOpen();
         if (number <= 0) {
             return "Number of rooms must be greater than 0.";
         }
 
-        Map<String, List<CleaningLogEntry>> events = manager.getEventsByRoom();
+        RoomStatistics stats = getStatistics();
         
-        if (events.isEmpty()) {
+        if (stats.size() == 0) {
             return "No rooms have been cleaned.";
         }
 
-        Entry<String, List<CleaningLogEntry>>[] eventsArray = mapToArrayOfEntries(events);
-        RoomFrequencyComparator comparator = new RoomFrequencyComparator();
-        Sorter<Entry<String, List<CleaningLogEntry>>> sorter = DSAFactory.getComparisonSorter(comparator);
-        sorter.sort(eventsArray);
+        // Counts come from the room statistics, so no events are read
+        Integer[] roomsArray = new Integer[stats.size()];
+        for (int i = 0; i < roomsArray.length; i++) {
+            roomsArray[i] = i;
+        }
+        RoomFrequencyComparator comparator = new RoomFrequencyComparator(stats);
+        Sorter<Integer> sorter = DSAFactory.getComparisonSorter(comparator);
+        sorter.sort(roomsArray);
         
         StringBuffer buf = new StringBuffer();
         buf.append("Frequency of Cleanings [\n");
         
         for (int i = 0; i < number; i++) {
-            if (i >= eventsArray.length) {
+            if (i >= roomsArray.length) {
                 break;
             }
-            String roomName = eventsArray[i].getKey();
-            int times = eventsArray[i].getValue().size();
             buf.append("   ");
-            buf.append(roomName);
+            buf.append(stats.getRoomID(roomsArray[i]));
             buf.append(" has been cleaned ");
-            buf.append(times);
+            buf.append(stats.getCount(roomsArray[i]));
             buf.append(" times\n");
         }
-        sorter.sort(eventsArray);
+        buf.append("]\n");
+        return buf.toString();
+    }
+
+    /**
+     * Returns a report of the X rooms that have gone longest without cleaning,
+     * stalest first, with the average percent cleaned for each. Rooms that have
+     * never been cleaned are listed first. Ties are listed in alphabetical
+     * order.
+     * 
+     * @param number the number of rooms to include in the report
+     * @return a report of the X stalest rooms
+     */
+    public String getStalestRoomsReport(int number) {
+        checkOpen();
+        if (number <= 0) {
+            return "Number of rooms must be greater than 0.";
+        }
+        
+        RoomStatistics stats = getStatistics();
+        
+        if (stats.size() == 0) {
+            return "No rooms have been cleaned.";
+        }
+        
+        TimestampCodec codec = new TimestampCodec(false);
+        StringBuffer buf = new StringBuffer();
+        buf.append("Stalest Rooms [\n");
+        for (int room : stats.getStalest(number)) {
+            buf.append("   ");
+            buf.append(stats.getRoomID(room));
+            long last = stats.getLastCleaned(room);
+            if (last == RoomStatistics.NEVER_CLEANED) {
+                buf.append(" has never been cleaned\n");
+            } else {
+                long tenths = Math.round(stats.getMeanPercent(room) * 10);
+                buf.append(" was last cleaned on ");
+                buf.append(codec.format(last));
+                buf.append(", average ");
+                buf.append(tenths / 10);
+                buf.append(".");
+                buf.append(tenths % 10);
+                buf.append("% cleaned\n");
+            }
+        }
         buf.append("]\n");
         return buf.toString();
     }
@@ -132,15 +240,25 @@ public class ReportManager {
      * @return a report of cleaning log events for each room
      */
     public String getRoomReport() {
-        Map<String, List<CleaningLogEntry>> events = manager.getEventsByRoom();
+        return getRoomReport(ROOMS_PER_CHUNK);
+    }
+
+    /**
+     * Returns the room report, rendering chunks of the provided number of rooms
+     * in parallel on the common fork-join pool. Each chunk is rendered into its
+     * own buffer and the chunks are joined in room order, so the report is the
+     * same for any chunk size.
+     * 
+     * @param roomsPerChunk the number of rooms rendered by each task
+     * @return a report of cleaning log events for each room
+     */
+    String getRoomReport(int roomsPerChunk) {
+        checkOpen();
+        RoomStatistics stats = getManager().getRoomStatistics();
         
-        if (events.isEmpty()) {
-            return "No rooms have been cleaned.";
-        }
-        Iterator<List<CleaningLogEntry>> it = events.values().iterator();
         boolean cleaned = false;
-        while (it.hasNext()) {
-            if (it.next().size() != 0) {
+        for (int room = 0; room < stats.size(); room++) {
+            if (stats.getCount(room) != 0) {
                 cleaned = true;
                 break;
             }
@@ -149,68 +267,206 @@ public class ReportManager {
             return "No rooms have been cleaned.";
         }
         
-        StringBuffer buf = new StringBuffer();
+        int chunks = (stats.size() + roomsPerChunk - 1) / roomsPerChunk;
+        StringBuilder[] rendered = new StringBuilder[chunks];
+        RoomReportTask task = new RoomReportTask(stats, roomsPerChunk, rendered, 0, chunks);
+        if (chunks == 1) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        
+        long length = 0;
+        for (StringBuilder chunk : rendered) {
+            length += chunk.length();
+        }
+        StringBuilder buf = new StringBuilder((int) Math.min(length + 32, Integer.MAX_VALUE - 8));
         buf.append("Room Report [\n");
+        for (StringBuilder chunk : rendered) {
+            buf.append(chunk);
+        }
+        buf.append("]\n");
+        return buf.toString();
+    }
+    
+    /**
+     * Appends the room report lines for a range of rooms to the provided buffer
+     * @param stats statistics for each room
+     * @param from index of the first room to render
+     * @param to index after the last room to render
+     * @param buf buffer to append to
+     */
+    private void renderRooms(RoomStatistics stats, int from, int to, StringBuilder buf) {
+        // Each event line is built in place: indent, timestamp, newline
+        TimestampCodec codec = new TimestampCodec(true);
+        char[] line = new char[EVENT_INDENT.length() + TimestampCodec.MAX_LENGTH + 1];
+        EVENT_INDENT.getChars(0, EVENT_INDENT.length(), line, 0);
         
-        Iterator<List<CleaningLogEntry>> logs = events.values().iterator();
-        Iterator<String> rooms = events.iterator();
-        while (logs.hasNext()) {
-            List<CleaningLogEntry> list = logs.next();
-            buf.append("   ");
-            buf.append(rooms.next());
-            buf.append(" was cleaned on [\n");
-            if (list.size() == 0) {
-                buf.append("      (never cleaned)\n");
-            } else {
-                for (CleaningLogEntry c : list) {
-                    buf.append("      ");
-                    buf.append(c.getTimestamp().format(DATE_TIME_FORMAT));
-                    buf.append("\n");
+        // One cursor walks every event of the range in room order, most recent
+        // first, and the rooms advance along with it; closing it releases any
+        // run file merged away while the report was rendered
+        try (EventStore.Cursor c = manager.getEventCursor(from, to)) {
+            boolean more = c.next();
+            for (int room = from; room < to; room++) {
+                buf.append("   ");
+                buf.append(stats.getRoomID(room));
+                buf.append(" was cleaned on [\n");
+                if (!more || c.room() != room) {
+                    buf.append("      (never cleaned)\n");
+                }
+                while (more && c.room() == room) {
+                    int end = EVENT_INDENT.length() + codec.encode(c.timestamp(), line, EVENT_INDENT.length());
+                    line[end] = '\n';
+                    buf.append(line, 0, end + 1);
+                    more = c.next();
                 }
+                buf.append("   ]\n");
             }
-            buf.append("   ]\n");
         }
-        buf.append("]\n");
-        return buf.toString();
     }
     
+    /**
+     * Stops any background loading and closes the cleaning manager, deleting
+     * its run files and dropping its off-heap buffers. Every report throws an
+     * IllegalStateException after the report manager is closed; closing again
+     * has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (loader != null) {
+            loader.close();
+        } else {
+            manager.close();
+        }
+    }
+    
+    /**
+     * Throws an exception if the report manager has been closed
+     * @throws IllegalStateException if the report manager has been closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException(CleaningManager.CLOSED_MESSAGE);
+        }
+    }
+    
+    /**
+     * Returns the room statistics. A lazy loader has them once every block of
+     * the log is parsed, so reports that only need the statistics do not wait
+     * for the events to be merged into the manager's store.
+     * @return statistics for each room
+     */
+    private RoomStatistics getStatistics() {
+        if (manager == null) {
+            return loader.getStatistics();
+        }
+        return manager.getRoomStatistics();
+    }
     
     /**
-     * Takes the map of Strings as keys and Lists of ClenaingLogEnties as values, and returns
-     * an array of entries of that map
-     * @param m map
-     * @return array of entries in given map
+     * Returns the cleaning manager, waiting for a lazy loader to finish if needed
+     * @return the cleaning manager
      */
-    private Entry<String, List<CleaningLogEntry>>[] mapToArrayOfEntries(Map<String, List<CleaningLogEntry>> m) {
-        @SuppressWarnings("unchecked")
-        Entry<String, List<CleaningLogEntry>>[] sorted = (Entry<String, List<CleaningLogEntry>>[]) new Entry[m.size()];
-        Iterator<Entry<String, List<CleaningLogEntry>>> it = m.entrySet().iterator();
-        for (int i = 0; i < m.size(); i++) {
-            sorted[i] = it.next();
-        }
-        return sorted;
+    private CleaningManager getManager() {
+        if (manager == null) {
+            manager = loader.get();
+        }
+        return manager;
     }
     
     /**
-     * Comparator for comparing Entry objects of Strings as keys and Lists of ClenaingLogEnties as values
-     * Sorted by size of list descending, then by name ascsending
+     * Comparator for comparing room indexes
+     * Sorted by number of cleanings descending, then by name ascending
      * @author Ethan Treece 
      *
      */
-    public class RoomFrequencyComparator implements Comparator<Entry<String, List<CleaningLogEntry>>> {
+    public static class RoomFrequencyComparator implements Comparator<Integer> {
+
+        /** Statistics holding each room's number of cleanings */
+        private final RoomStatistics stats;
+
+        /**
+         * Constructs a new RoomFrequencyComparator over the provided statistics
+         * @param stats statistics holding each room's number of cleanings
+         */
+        public RoomFrequencyComparator(RoomStatistics stats) {
+            this.stats = stats;
+        }
 
         @Override
-        public int compare(Entry<String, List<CleaningLogEntry>> o1, Entry<String, List<CleaningLogEntry>> o2) {
-            if (o1.getValue().size() > o2.getValue().size()) {
+        public int compare(Integer o1, Integer o2) {
+            if (stats.getCount(o1) > stats.getCount(o2)) {
                 return -1;
-            } else if (o1.getValue().size() < o2.getValue().size()) {
+            } else if (stats.getCount(o1) < stats.getCount(o2)) {
                 return 1;
             } else {
-                return o1.getKey().compareTo(o2.getKey());
+                return stats.getRoomID(o1).compareTo(stats.getRoomID(o2));
             }
             
         }
 
     }
     
+    /**
+     * Fork-join task that renders a range of room report chunks, splitting the
+     * range in half until a single chunk is left
+     * @author Ethan Treece
+     *
+     */
+    private class RoomReportTask extends RecursiveAction {
+
+        /** Serial version UID */
+        private static final long serialVersionUID = 1L;
+
+        /** Statistics for each room */
+        private final transient RoomStatistics stats;
+
+        /** Number of rooms in each chunk */
+        private final int roomsPerChunk;
+
+        /** Rendered chunks, filled in by chunk number */
+        private final StringBuilder[] rendered;
+
+        /** First chunk to render */
+        private final int fromChunk;
+
+        /** Chunk after the last chunk to render */
+        private final int toChunk;
+
+        /**
+         * Constructs a new RoomReportTask
+         * @param stats statistics for each room
+         * @param roomsPerChunk number of rooms in each chunk
+         * @param rendered array to hold the rendered chunks
+         * @param fromChunk first chunk to render
+         * @param toChunk chunk after the last chunk to render
+         */
+        RoomReportTask(RoomStatistics stats, int roomsPerChunk, StringBuilder[] rendered, int fromChunk,
+                int toChunk) {
+            this.stats = stats;
+            this.roomsPerChunk = roomsPerChunk;
+            this.rendered = rendered;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int mid = (fromChunk + toChunk) >>> 1;
+                invokeAll(new RoomReportTask(stats, roomsPerChunk, rendered, fromChunk, mid),
+                        new RoomReportTask(stats, roomsPerChunk, rendered, mid, toChunk));
+                return;
+            }
+            int from = fromChunk * roomsPerChunk;
+            int to = Math.min(from + roomsPerChunk, stats.size());
+            StringBuilder buf = new StringBuilder();
+            renderRooms(stats, from, to, buf);
+            rendered[fromChunk] = buf;
+        }
+    }
 }
\ No newline at end of file
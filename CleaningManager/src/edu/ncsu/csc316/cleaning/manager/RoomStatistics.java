@@ -0,0 +1,216 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import edu.ncsu.csc316.cleaning.data.RoomRecord;
+import edu.ncsu.csc316.cleaning.factory.DSAFactory;
+import edu.ncsu.csc316.dsa.map.Map;
+
+/**
+ * RoomStatistics keeps running totals for every room: how many times it has
+ * been cleaned, when it was last cleaned, how much area has been covered, and
+ * the sum of percents cleaned. Totals are updated one event at a time, so
+ * questions about rooms can be answered without going back over the cleaning
+ * log.
+ *
+ * Rooms are identified by their index in the sorted room list, which is the
+ * same index used by CoverageKernel.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class RoomStatistics {
+
+    /** Timestamp stored for a room that has never been cleaned */
+    public static final long NEVER_CLEANED = Long.MIN_VALUE;
+
+    /** Room IDs in ascending order */
+    private final String[] roomIDs;
+
+    /** Room index for each room ID */
+    private final Map<String, Integer> indexes;
+
+    /** Area of each room in square feet */
+    private final int[] areas;
+
+    /** Number of cleanings of each room */
+    private final int[] counts;
+
+    /** Most recent cleaning of each room in epoch seconds */
+    private final long[] lastCleaned;
+
+    /** Sum of percents cleaned for each room */
+    private final long[] percentTotals;
+
+    /**
+     * Constructs a new RoomStatistics with no cleanings for the provided rooms
+     * @param rooms room records sorted by room ID
+     */
+    public RoomStatistics(RoomRecord[] rooms) {
+        roomIDs = new String[rooms.length];
+        indexes = DSAFactory.getMap();
+        areas = new int[rooms.length];
+        counts = new int[rooms.length];
+        lastCleaned = new long[rooms.length];
+        percentTotals = new long[rooms.length];
+        for (int i = 0; i < rooms.length; i++) {
+            roomIDs[i] = rooms[i].getRoomID();
+            indexes.put(roomIDs[i], i);
+            areas[i] = rooms[i].getLength() * rooms[i].getWidth();
+            lastCleaned[i] = NEVER_CLEANED;
+        }
+    }
+
+    /**
+     * Records one cleaning of a room
+     * @param room room index
+     * @param epochSecond time of the cleaning in epoch seconds
+     * @param percent percent of the room cleaned
+     */
+    public void record(int room, long epochSecond, int percent) {
+        counts[room]++;
+        percentTotals[room] += percent;
+        if (epochSecond > lastCleaned[room]) {
+            lastCleaned[room] = epochSecond;
+        }
+    }
+
+    /**
+     * Returns the number of rooms
+     * @return number of rooms
+     */
+    public int size() {
+        return roomIDs.length;
+    }
+
+    /**
+     * Returns the index of the room with the given ID
+     * @param roomID room ID
+     * @return room index, or -1 if there is no such room
+     */
+    public int indexOf(String roomID) {
+        Integer index = indexes.get(roomID);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the index of the first room whose ID is not less than the given ID
+     * @param roomID room ID to search for
+     * @return room index from 0 to size()
+     */
+    public int lowerBound(String roomID) {
+        int low = 0;
+        int high = roomIDs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (roomIDs[mid].compareTo(roomID) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the ID of a room
+     * @param room room index
+     * @return room ID
+     */
+    public String getRoomID(int room) {
+        return roomIDs[room];
+    }
+
+    /**
+     * Returns the area of each room, indexed by room index. The array is shared,
+     * not copied.
+     * @return area of each room in square feet
+     */
+    int[] getAreas() {
+        return areas;
+    }
+
+    /**
+     * Returns the number of times a room has been cleaned
+     * @param room room index
+     * @return number of cleanings
+     */
+    public int getCount(int room) {
+        return counts[room];
+    }
+
+    /**
+     * Returns the most recent time a room was cleaned
+     * @param room room index
+     * @return epoch second of the last cleaning, or NEVER_CLEANED
+     */
+    public long getLastCleaned(int room) {
+        return lastCleaned[room];
+    }
+
+    /**
+     * Returns the total square footage (as a whole number) covered in a room.
+     * Partial square feet are rounded down to the nearest whole number.
+     * @param room room index
+     * @return square feet covered
+     */
+    public long getSquareFeetCovered(int room) {
+        return areas[room] * percentTotals[room] / 100;
+    }
+
+    /**
+     * Returns the mean percent cleaned for a room
+     * @param room room index
+     * @return mean percent cleaned, or 0 if the room has never been cleaned
+     */
+    public double getMeanPercent(int room) {
+        return counts[room] == 0 ? 0 : (double) percentTotals[room] / counts[room];
+    }
+
+    /**
+     * Returns the indexes of the rooms that have gone longest without cleaning,
+     * stalest first. Rooms that have never been cleaned come before all others,
+     * and ties are broken by room ID. Runs in O(rooms log number) time.
+     * @param number the largest number of rooms to return
+     * @return room indexes, stalest first
+     */
+    public int[] getStalest(int number) {
+        int k = Math.min(number, roomIDs.length);
+        if (k <= 0) {
+            return new int[0];
+        }
+        // Keep the k stalest rooms seen so far, with the freshest of them on top
+        Comparator<Integer> stalest = new StalenessComparator();
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(k, stalest.reversed());
+        for (int i = 0; i < roomIDs.length; i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (stalest.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll();
+        }
+        return result;
+    }
+
+    /**
+     * Comparator for comparing room indexes
+     * Sorted by last cleaned ascending, then by index ascending
+     * @author Ethan Treece
+     *
+     */
+    private class StalenessComparator implements Comparator<Integer> {
+
+        @Override
+        public int compare(Integer o1, Integer o2) {
+            int c = Long.compare(lastCleaned[o1], lastCleaned[o2]);
+            return c != 0 ? c : Integer.compare(o1, o2);
+        }
+
+    }
+}
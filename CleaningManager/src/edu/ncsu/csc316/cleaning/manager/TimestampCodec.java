@@ -0,0 +1,266 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * TimestampCodec converts between epoch seconds and the fixed
+ * MM/dd/yyyy HH:mm:ss layout of ReportManager.DATE_TIME_FORMAT without
+ * building intermediate strings. Timestamps are written straight into a
+ * caller provided char or byte buffer, and the "MM/dd/yyyy " prefix of the
+ * most recent day can be cached so runs of events on the same day only write
+ * the time of day.
+ *
+ * Output and accepted input match DATE_TIME_FORMAT exactly. Input that is not
+ * a plain in-range timestamp (for example a day that the formatter would
+ * clamp, 24:00:00, or a signed year) is handed to DATE_TIME_FORMAT, so parse
+ * errors carry the same DateTimeParseException the formatter would throw.
+ *
+ * A codec that caches days is not safe for use by multiple threads at once.
+ *
+ * @author Ethan Treece
+ *
+ */
+public class TimestampCodec {
+
+    /** Number of characters in a timestamp with a four digit year */
+    public static final int LENGTH = 19;
+
+    /** Largest number of characters written by a single encode call */
+    public static final int MAX_LENGTH = 26;
+
+    /** Number of characters in the date part of a timestamp, including the trailing space */
+    private static final int DATE_LENGTH = 11;
+
+    /** Seconds in a day */
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /** Days in each month of a non leap year */
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    /** Whether the date prefix of the most recent day is reused */
+    private final boolean cacheDays;
+
+    /** Epoch day of the cached date prefix */
+    private long cachedDay;
+
+    /** Cached "MM/dd/yyyy " prefix, valid when cachedDay is set */
+    private final char[] datePrefix;
+
+    /** Scratch space for encoding into byte buffers and Strings */
+    private final char[] scratch;
+
+    /**
+     * Constructs a new TimestampCodec
+     * @param cacheDays true if the date prefix of the most recent day should be reused
+     */
+    public TimestampCodec(boolean cacheDays) {
+        this.cacheDays = cacheDays;
+        this.cachedDay = Long.MIN_VALUE;
+        this.datePrefix = new char[DATE_LENGTH];
+        this.scratch = new char[MAX_LENGTH];
+    }
+
+    /**
+     * Writes the timestamp at the given epoch second into the char buffer
+     * @param epochSecond seconds since the epoch
+     * @param dest buffer with at least MAX_LENGTH characters free after offset
+     * @param offset position of the first character to write
+     * @return number of characters written
+     */
+    public int encode(long epochSecond, char[] dest, int offset) {
+        long day = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        if (!fillDatePrefix(day)) {
+            return encodeSlow(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC), dest, offset);
+        }
+        System.arraycopy(datePrefix, 0, dest, offset, DATE_LENGTH);
+        writeTime(secondOfDay, dest, offset + DATE_LENGTH);
+        return LENGTH;
+    }
+
+    /**
+     * Writes the timestamp into the char buffer. Fractional seconds are ignored,
+     * as they are by DATE_TIME_FORMAT.
+     * @param time date and time to write
+     * @param dest buffer with at least MAX_LENGTH characters free after offset
+     * @param offset position of the first character to write
+     * @return number of characters written
+     */
+    public int encode(LocalDateTime time, char[] dest, int offset) {
+        if (!fillDatePrefix(time.toLocalDate().toEpochDay())) {
+            return encodeSlow(time, dest, offset);
+        }
+        System.arraycopy(datePrefix, 0, dest, offset, DATE_LENGTH);
+        writeTime(time.toLocalTime().toSecondOfDay(), dest, offset + DATE_LENGTH);
+        return LENGTH;
+    }
+
+    /**
+     * Writes the timestamp at the given epoch second into the byte buffer as ASCII
+     * @param epochSecond seconds since the epoch
+     * @param dest buffer with at least MAX_LENGTH bytes free after offset
+     * @param offset position of the first byte to write
+     * @return number of bytes written
+     */
+    public int encode(long epochSecond, byte[] dest, int offset) {
+        int length = encode(epochSecond, scratch, 0);
+        for (int i = 0; i < length; i++) {
+            dest[offset + i] = (byte) scratch[i];
+        }
+        return length;
+    }
+
+    /**
+     * Returns the timestamp at the given epoch second as a String
+     * @param epochSecond seconds since the epoch
+     * @return the formatted timestamp
+     */
+    public String format(long epochSecond) {
+        return new String(scratch, 0, encode(epochSecond, scratch, 0));
+    }
+
+    /**
+     * Parses a timestamp in the MM/dd/yyyy HH:mm:ss layout
+     * @param text text to parse
+     * @return seconds since the epoch
+     * @throws DateTimeParseException if the text is not accepted by DATE_TIME_FORMAT
+     */
+    public static long parse(CharSequence text) {
+        if (text.length() == LENGTH && text.charAt(2) == '/' && text.charAt(5) == '/'
+                && text.charAt(10) == ' ' && text.charAt(13) == ':' && text.charAt(16) == ':') {
+            int month = twoDigits(text, 0);
+            int day = twoDigits(text, 3);
+            int century = twoDigits(text, 6);
+            int yearOfCentury = twoDigits(text, 8);
+            int year = century * 100 + yearOfCentury;
+            int hour = twoDigits(text, 11);
+            int minute = twoDigits(text, 14);
+            int second = twoDigits(text, 17);
+            if (century >= 0 && yearOfCentury >= 0 && year >= 1 && month >= 1 && month <= 12
+                    && day >= 1 && day <= daysInMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+                return daysFromCivil(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+            }
+        }
+        // Anything unusual is resolved, or rejected, exactly as the formatter does it
+        return LocalDateTime.parse(text, ReportManager.DATE_TIME_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    /**
+     * Makes sure the date prefix holds the given epoch day
+     * @param day epoch day
+     * @return false if the day's year does not fit the four digit layout
+     */
+    private boolean fillDatePrefix(long day) {
+        if (cacheDays && day == cachedDay) {
+            return true;
+        }
+        // Civil date from epoch day, after Howard Hinnant's civil_from_days
+        long z = day + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int dayOfMonth = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 1 || year > 9999) {
+            cachedDay = Long.MIN_VALUE;
+            return false;
+        }
+        writeTwoDigits(month, datePrefix, 0);
+        datePrefix[2] = '/';
+        writeTwoDigits(dayOfMonth, datePrefix, 3);
+        datePrefix[5] = '/';
+        writeTwoDigits((int) (year / 100), datePrefix, 6);
+        writeTwoDigits((int) (year % 100), datePrefix, 8);
+        datePrefix[10] = ' ';
+        cachedDay = day;
+        return true;
+    }
+
+    /**
+     * Writes HH:mm:ss for the given second of the day
+     * @param secondOfDay second of the day
+     * @param dest buffer to write to
+     * @param offset position of the first character to write
+     */
+    private static void writeTime(int secondOfDay, char[] dest, int offset) {
+        writeTwoDigits(secondOfDay / 3600, dest, offset);
+        dest[offset + 2] = ':';
+        writeTwoDigits(secondOfDay / 60 % 60, dest, offset + 3);
+        dest[offset + 5] = ':';
+        writeTwoDigits(secondOfDay % 60, dest, offset + 6);
+    }
+
+    /**
+     * Writes a timestamp that does not fit the four digit layout by way of DATE_TIME_FORMAT
+     * @param time date and time to write
+     * @param dest buffer to write to
+     * @param offset position of the first character to write
+     * @return number of characters written
+     */
+    private static int encodeSlow(LocalDateTime time, char[] dest, int offset) {
+        String s = time.format(ReportManager.DATE_TIME_FORMAT);
+        s.getChars(0, s.length(), dest, offset);
+        return s.length();
+    }
+
+    /**
+     * Writes a number from 0 to 99 as two digits
+     * @param value number to write
+     * @param dest buffer to write to
+     * @param offset position of the first character to write
+     */
+    private static void writeTwoDigits(int value, char[] dest, int offset) {
+        dest[offset] = (char) ('0' + value / 10);
+        dest[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    /**
+     * Reads two decimal digits
+     * @param text text to read from
+     * @param offset position of the first digit
+     * @return the number, or -1 if either character is not a digit
+     */
+    private static int twoDigits(CharSequence text, int offset) {
+        int tens = text.charAt(offset) - '0';
+        int ones = text.charAt(offset + 1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    /**
+     * Returns the number of days in the month
+     * @param year year
+     * @param month month of the year from 1 to 12
+     * @return days in the month
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Returns the epoch day of a civil date, after Howard Hinnant's days_from_civil
+     * @param year year from 1 to 9999
+     * @param month month of the year from 1 to 12
+     * @param day day of the month
+     * @return days since 1970-01-01
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+}
@@ -3,6 +3,7 @@ package edu.ncsu.csc316.cleaning.ui;
 import java.io.FileNotFoundException;
 import java.util.Scanner;
 
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
 import edu.ncsu.csc316.cleaning.manager.ReportManager;
 
 /**
@@ -33,9 +34,10 @@ public class CleaningManagerUI {
         System.out.print("Cleaning events: ");
         String cleaningEvents = in.nextLine();
         
-        manager = new ReportManager(roomInfo, cleaningEvents);
+        // The log is parsed in the background while the user picks a report
+        manager = new ReportManager(roomInfo, cleaningEvents, StorageMode.HEAP, true);
         
-        System.out.print("1Report (F,C,V,Q): ");
+        System.out.print("1Report (F,C,V,S,Q): ");
         String userInput = in.nextLine();
         
         do {
@@ -46,12 +48,17 @@ public class CleaningManagerUI {
                 System.out.println(manager.getFrequencyReport(rooms));
             } else if ("C".equals(userInput)) {
                 System.out.println(manager.getRoomReport());
+            } else if ("S".equals(userInput)) {
+                System.out.print("Number of rooms: ");
+                int rooms = in.nextInt();
+                in.nextLine();
+                System.out.println(manager.getStalestRoomsReport(rooms));
             } else if ("V".equals(userInput)) {
                 System.out.print("Enter the date the vacuum bag was last replaced (MM/DD/YYYY HH:MM:SS): ");
                 String date = in.nextLine();
                 System.out.println(manager.getVacuumBagReport(date));
             }
-            System.out.print("Report (F,C,V,Q): ");
+            System.out.print("Report (F,C,V,S,Q): ");
             userInput = in.next();
             in.nextLine();
         } while (!"Q".equals(userInput));
@@ -2,12 +2,22 @@ package edu.ncsu.csc316.cleaning.manager;
 
 import static org.junit.Assert.*;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 
 import org.junit.Test;
 
 import edu.ncsu.csc316.cleaning.data.CleaningLogEntry;
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
+import edu.ncsu.csc316.cleaning.manager.CoverageKernel.CoverageMode;
 import edu.ncsu.csc316.dsa.list.List;
 import edu.ncsu.csc316.dsa.map.Map;
 
@@ -18,6 +28,9 @@ import edu.ncsu.csc316.dsa.map.Map;
  */
 public class CleaningManagerTest {
     
+    /** Number of events in the log loaded on a small heap */
+    private static final int LARGE_LOG_EVENTS = 300000;
+    
     /** Cleaning manager */
     private CleaningManager manager;
 
@@ -34,7 +47,224 @@ public class CleaningManagerTest {
         
         int c = manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2));
         assertEquals(1538, c);
+        assertEquals(1538, manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2), CoverageMode.TRUNCATE_EACH_EVENT));
+        
+        // Exact sum is 5733.38, while rounding after every event drops the partial feet
+        assertEquals(5733, manager.getCoverageSince(LocalDateTime.of(2021, 5, 1, 0, 0, 0)));
+        assertEquals(5727, manager.getCoverageSince(LocalDateTime.of(2021, 5, 1, 0, 0, 0), CoverageMode.TRUNCATE_EACH_EVENT));
+        
+        // Events at exactly the provided time are not counted
+        assertEquals(0, manager.getCoverageSince(LocalDateTime.of(2021, 6, 1, 13, 39, 1)));
+        assertEquals(131, manager.getCoverageSince(LocalDateTime.of(2021, 6, 1, 13, 39, 0)));
         
     }
-
+    
+    @Test
+    public void testAddCleaningEvent() {
+        try {
+            manager = new CleaningManager("input/sample-rooms.csv", "input/sample-logs.csv");
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        
+        RoomStatistics stats = manager.getRoomStatistics();
+        int kitchen = stats.indexOf("Kitchen");
+        assertEquals(0, stats.getCount(kitchen));
+        assertEquals(RoomStatistics.NEVER_CLEANED, stats.getLastCleaned(kitchen));
+        
+        // A late event lands between existing events for the room
+        manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 5, 29, 8, 0, 0), "Living Room", 50));
+        manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 6, 2, 8, 0, 0), "Kitchen", 40));
+        
+        Map<String, List<CleaningLogEntry>> map = manager.getEventsByRoom();
+        List<CleaningLogEntry> living = map.get("Living Room");
+        assertEquals(7, living.size());
+        assertEquals(LocalDateTime.of(2021, 5, 30, 10, 14, 41), living.get(0).getTimestamp());
+        assertEquals(LocalDateTime.of(2021, 5, 29, 8, 0, 0), living.get(1).getTimestamp());
+        assertEquals(LocalDateTime.of(2021, 5, 28, 17, 22, 52), living.get(2).getTimestamp());
+        assertEquals(1, map.get("Kitchen").size());
+        
+        assertEquals(1, stats.getCount(kitchen));
+        assertEquals(LocalDateTime.of(2021, 6, 2, 8, 0, 0), 
+                LocalDateTime.ofEpochSecond(stats.getLastCleaned(kitchen), 0, ZoneOffset.UTC));
+        assertEquals(144, stats.getSquareFeetCovered(kitchen));
+        
+        // 1538.79 + 437.5 + 144
+        assertEquals(2120, manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2)));
+        
+        // An identical event is only counted once
+        assertFalse(manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 6, 2, 8, 0, 0), "Kitchen", 40)));
+        assertFalse(manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 6, 1, 13, 39, 1), "Office", 78)));
+        assertEquals(1, stats.getCount(kitchen));
+        assertEquals(2120, manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2)));
+        
+        manager.compact();
+        assertEquals(7, manager.getEventsByRoom().get("Living Room").size());
+        
+        try {
+            manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 6, 2, 8, 0, 0), "Garage", 40));
+            fail("Events for unknown rooms should not be accepted");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown room: Garage", e.getMessage());
+        }
+        manager.close();
+    }
+    
+    @Test
+    public void testOffHeapCoverage() {
+        try {
+            manager = new CleaningManager("input/sample-rooms.csv", "input/sample-logs.csv", null, StorageMode.OFF_HEAP);
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        assertEquals(1538, manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2)));
+        
+        // Added events are counted along with the store's off-heap events, before and after compaction
+        assertTrue(manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 6, 2, 8, 0, 0), "Kitchen", 40)));
+        assertEquals(1682, manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2)));
+        manager.compact();
+        assertEquals(1682, manager.getCoverageSince(LocalDateTime.of(2021, 5, 28, 14, 15, 2)));
+        assertEquals(1, manager.getRoomStatistics().getCount(manager.getRoomStatistics().indexOf("Kitchen")));
+        manager.close();
+    }
+    
+    @Test
+    public void testOffHeapLoadOnSmallHeap() throws IOException, InterruptedException {
+        // Sample rooms, cleaned in turn once a minute
+        String[] rooms = {"Office", "Dining Room", "Living Room", "Guest Bedroom", "Guest Bathroom", "Foyer", "Kitchen"};
+        int[] areas = {168, 225, 875, 272, 80, 64, 360};
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss");
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        long coverage = 0;
+        Path log = Files.createTempFile("cleaning-log", ".csv");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(log)) {
+                out.write("TIMESTAMP,ROOM_ID,PERCENT_CLEANED\n");
+                for (int i = 0; i < LARGE_LOG_EVENTS; i++) {
+                    out.write(format.format(start.plusMinutes(i)) + "," + rooms[i % rooms.length] + "," + i % 101 + "\n");
+                    coverage += (long) areas[i % rooms.length] * (i % 101);
+                }
+            }
+            
+            // Holding every event as a CleaningLogEntry would need several times this heap
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process child = new ProcessBuilder(java, "-Xmx16m", "-XX:MaxDirectMemorySize=64m", "-cp",
+                    System.getProperty("java.class.path"), SmallHeapLoad.class.getName(), log.toString())
+                    .redirectErrorStream(true).start();
+            String output = new String(child.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(output, 0, child.waitFor());
+            String expected = LARGE_LOG_EVENTS + " " + coverage / 100 + "\n";
+            assertEquals(expected + expected, output);
+        } finally {
+            Files.delete(log);
+        }
+    }
+    
+    /**
+     * Loads a cleaning log off the heap, eagerly and then lazily, and prints
+     * the number of events and the coverage since 2000 for each. Run in a
+     * separate JVM with a small heap by testOffHeapLoadOnSmallHeap.
+     * @author Ethan Treece
+     *
+     */
+    public static class SmallHeapLoad {
+        
+        /**
+         * Loads the cleaning log at the path in the first argument
+         * @param args command line arguments
+         * @throws FileNotFoundException if a file cannot be read
+         */
+        public static void main(String[] args) throws FileNotFoundException {
+            LocalDateTime since = LocalDateTime.of(2000, 1, 1, 0, 0);
+            CleaningManager eager = new CleaningManager("input/sample-rooms.csv", args[0], null, StorageMode.OFF_HEAP);
+            System.out.println(eager.countEvents(EventQuery.builder().build()) + " " + eager.getCoverageSince(since));
+            eager.close();
+            LogLoader loader = new LogLoader("input/sample-rooms.csv", args[0], null, StorageMode.OFF_HEAP);
+            CleaningManager lazy = loader.get();
+            System.out.println(lazy.countEvents(EventQuery.builder().build()) + " " + lazy.getCoverageSince(since));
+            loader.close();
+        }
+    }
+    
+    @Test
+    public void testGetEvents() {
+        try {
+            manager = new CleaningManager("input/sample-rooms.csv", "input/sample-logs.csv");
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        
+        LocalDateTime mayFirst = LocalDateTime.of(2021, 5, 1, 0, 0, 0);
+        LocalDateTime mayLast = LocalDateTime.of(2021, 5, 31, 23, 59, 59);
+        EventQuery guests = EventQuery.builder().roomPrefix("Guest").cleanedBetween(mayFirst, mayLast)
+                .percentBetween(0, 79).build();
+        List<CleaningLogEntry> events = manager.getEvents(guests);
+        assertEquals(2, events.size());
+        assertEquals("Guest Bedroom", events.get(0).getRoomID());
+        assertEquals(LocalDateTime.of(2021, 5, 23, 11, 51, 19), events.get(0).getTimestamp());
+        assertEquals(77, events.get(0).getPercentCompleted());
+        assertEquals(LocalDateTime.of(2021, 5, 13, 22, 20, 34), events.get(1).getTimestamp());
+        assertEquals(2, manager.countEvents(guests));
+        
+        assertEquals(4, manager.countEvents(EventQuery.builder().roomPrefix("Guest").cleanedBetween(mayFirst, mayLast).build()));
+        assertEquals(15, manager.countEvents(EventQuery.builder().build()));
+        assertEquals(15, manager.getEvents(EventQuery.builder().build()).size());
+        assertEquals(0, manager.countEvents(EventQuery.builder().roomPrefix("Garage").build()));
+        assertEquals(0, manager.countEvents(EventQuery.builder().roomPrefix("Kitchen").build()));
+        
+        // Room and time bounds are inclusive
+        assertEquals(6, manager.countEvents(EventQuery.builder().roomsBetween("Dining Room", "Guest Bathroom").build()));
+        EventQuery exact = EventQuery.builder()
+                .cleanedBetween(LocalDateTime.of(2021, 5, 23, 11, 51, 19), LocalDateTime.of(2021, 5, 23, 18, 22, 11)).build();
+        assertEquals(2, manager.countEvents(exact));
+        events = manager.getEvents(exact);
+        assertEquals("Dining Room", events.get(0).getRoomID());
+        assertEquals("Guest Bedroom", events.get(1).getRoomID());
+        
+        // Added events are found whether they are buffered or merged into runs
+        manager.addCleaningEvent(new CleaningLogEntry(LocalDateTime.of(2021, 5, 20, 8, 0, 0), "Guest Bathroom", 30));
+        assertEquals(3, manager.countEvents(guests));
+        assertEquals("Guest Bathroom", manager.getEvents(guests).get(0).getRoomID());
+        manager.compact();
+        assertEquals(3, manager.countEvents(guests));
+        assertEquals(5, manager.countEvents(EventQuery.builder().roomPrefix("Guest").cleanedBetween(mayFirst, mayLast).build()));
+        manager.close();
+    }
+    
+    @Test
+    public void testClosed() {
+        for (StorageMode storage : StorageMode.values()) {
+            try {
+                manager = new CleaningManager("input/sample-rooms.csv", "input/sample-logs.csv", null, storage);
+            } catch (FileNotFoundException e) {
+                fail("Files not found");
+            }
+            manager.close();
+            // Closing twice has no effect
+            manager.close();
+            
+            LocalDateTime time = LocalDateTime.of(2021, 5, 28, 14, 15, 2);
+            assertClosed(() -> manager.getCoverageSince(time));
+            assertClosed(() -> manager.getCoverageSince(time, CoverageMode.TRUNCATE_EACH_EVENT));
+            assertClosed(() -> manager.addCleaningEvent(new CleaningLogEntry(time, "Office", 50)));
+            assertClosed(() -> manager.getRoomStatistics());
+            assertClosed(() -> manager.getEventsByRoom());
+            assertClosed(() -> manager.getEventCursor(0, 1));
+            assertClosed(() -> manager.countEvents(EventQuery.builder().build()));
+            assertClosed(() -> manager.compact());
+        }
+    }
+    
+    /**
+     * Asserts that an action fails because the manager is closed
+     * @param action the action to run
+     */
+    private static void assertClosed(Runnable action) {
+        try {
+            action.run();
+            fail("Closed manager was used");
+        } catch (IllegalStateException e) {
+            assertEquals(CleaningManager.CLOSED_MESSAGE, e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,131 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.ncsu.csc316.cleaning.manager.CoverageKernel.CoverageMode;
+
+/**
+ * Tests the CoverageKernel class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class CoverageKernelTest {
+
+    @Test
+    public void testCoverageSince() {
+        int[] areas = {100, 3};
+        int[] rooms = {0, 0, 1, 1, -1};
+        long[] timestamps = {50, 10, 40, 30, 60};
+        int[] percents = {29, 50, 50, 50, 100};
+        CoverageKernel kernel = new CoverageKernel(areas, rooms, timestamps, percents);
+        assertEquals(5, kernel.size());
+
+        // 2900 + 5000 + 150 + 150 = 8200 hundredths of a square foot
+        assertEquals(82, kernel.coverageSince(0, CoverageMode.EXACT));
+        // 100 * 0.29 is 28.999... as a double, and each 1.5 is rounded down to 1
+        assertEquals(80, kernel.coverageSince(0, CoverageMode.TRUNCATE_EACH_EVENT));
+
+        // Only events strictly after the provided time are counted
+        assertEquals(32, kernel.coverageSince(10, CoverageMode.EXACT));
+        assertEquals(30, kernel.coverageSince(10, CoverageMode.TRUNCATE_EACH_EVENT));
+        assertEquals(0, kernel.coverageSince(50, CoverageMode.EXACT));
+        assertEquals(0, kernel.coverageSince(50, CoverageMode.TRUNCATE_EACH_EVENT));
+    }
+
+    @Test
+    public void testOffHeap() {
+        OffHeapColumns events = new OffHeapColumns();
+        events.add(0, 50, 29);
+        events.add(0, 10, 50);
+        events.add(1, 40, 50);
+        CoverageKernel kernel = CoverageKernel.offHeap(new int[] {100, 3}, events);
+        assertEquals(3, kernel.size());
+
+        // Added events are kept on the heap and summed with the shared columns
+        kernel.add(1, 30, 50);
+        kernel.add(-1, 60, 100);
+        assertEquals(5, kernel.size());
+        assertEquals(3, events.size());
+        assertEquals(82, kernel.coverageSince(0, CoverageMode.EXACT));
+        assertEquals(80, kernel.coverageSince(0, CoverageMode.TRUNCATE_EACH_EVENT));
+        assertEquals(32, kernel.coverageSince(10, CoverageMode.EXACT));
+        assertEquals(30, kernel.coverageSince(10, CoverageMode.TRUNCATE_EACH_EVENT));
+    }
+
+    @Test
+    public void testIndexedCoverage() {
+        int[] areas = {168, 225, 875};
+        Random random = new Random(316);
+        int[] rooms = new int[5000];
+        long[] timestamps = new long[rooms.length];
+        int[] percents = new int[rooms.length];
+        for (int i = 0; i < rooms.length; i++) {
+            rooms[i] = random.nextInt(4) - 1;
+            timestamps[i] = random.nextInt(100000);
+            percents[i] = random.nextInt(101);
+        }
+        CoverageKernel kernel = new CoverageKernel(areas, rooms.clone(), timestamps.clone(), percents.clone());
+        OffHeapColumns events = new OffHeapColumns();
+        for (int i = 0; i < rooms.length; i++) {
+            events.add(rooms[i], timestamps[i], percents[i]);
+        }
+        CoverageKernel offHeap = CoverageKernel.offHeap(areas, events);
+
+        // Late events are scanned until enough of them arrive to be merged into the index
+        long[] weights = new long[rooms.length + 20000];
+        long[] times = new long[weights.length];
+        for (int i = 0; i < rooms.length; i++) {
+            weights[i] = rooms[i] < 0 ? 0 : (long) areas[rooms[i]] * percents[i];
+            times[i] = timestamps[i];
+        }
+        for (int i = rooms.length; i < weights.length; i++) {
+            int room = random.nextInt(3);
+            times[i] = random.nextInt(200000) - 50000;
+            int percent = random.nextInt(101);
+            weights[i] = (long) areas[room] * percent;
+            kernel.add(room, times[i], percent);
+            offHeap.add(room, times[i], percent);
+            if (i % 997 == 0) {
+                long since = random.nextInt(200000) - 50000;
+                long expected = 0;
+                for (int j = 0; j <= i; j++) {
+                    expected += times[j] > since ? weights[j] : 0;
+                }
+                assertEquals(expected / 100, kernel.coverageSince(since, CoverageMode.EXACT));
+                assertEquals(expected / 100, offHeap.coverageSince(since, CoverageMode.EXACT));
+            }
+        }
+        long total = 0;
+        for (long w : weights) {
+            total += w;
+        }
+        assertEquals(total / 100, kernel.coverageSince(Long.MIN_VALUE, CoverageMode.EXACT));
+        assertEquals(0, kernel.coverageSince(Long.MAX_VALUE, CoverageMode.EXACT));
+        assertEquals(0, kernel.coverageSince(150000, CoverageMode.EXACT));
+    }
+
+    @Test
+    public void testSaturates() {
+        int[] areas = {Integer.MAX_VALUE};
+        int[] rooms = {0, 0, 0};
+        long[] timestamps = {1, 2, 3};
+        int[] percents = {100, 100, 100};
+        CoverageKernel kernel = new CoverageKernel(areas, rooms, timestamps, percents);
+        assertEquals(Integer.MAX_VALUE, kernel.coverageSince(0, CoverageMode.EXACT));
+        assertEquals(Integer.MAX_VALUE, kernel.coverageSince(0, CoverageMode.TRUNCATE_EACH_EVENT));
+    }
+
+    @Test
+    public void testMismatchedColumns() {
+        try {
+            new CoverageKernel(new int[1], new int[2], new long[2], new int[1]);
+            fail("Columns of different lengths should not be accepted");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Event columns must have the same length.", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Tests the EventStore class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class EventStoreTest {
+
+    @Test
+    public void testEventStore() throws IOException {
+        Path dir = Files.createTempDirectory("event-store-test");
+        // Sorted by room ascending, then timestamp descending; the event without
+        // a room is dropped but the repeat is kept, as it was in the loaded log
+        int[] rooms = {-1, 0, 0, 0, 2};
+        long[] timestamps = {5, 30, 10, 10, 20};
+        int[] percents = {50, 40, 60, 60, 70};
+        EventStore store = new EventStore(rooms, timestamps, percents, dir, 2, 2);
+        assertEquals("0/30/40 0/10/60 0/10/60 2/20/70", contents(store));
+
+        // Late and out of order events land in place
+        assertTrue(store.add(0, 20, 90));
+        assertTrue(store.add(1, 15, 10));
+        assertEquals("0/30/40 0/20/90 0/10/60 0/10/60 1/15/10 2/20/70", contents(store));
+
+        // Late duplicates are found in the buffer and in every run
+        assertFalse(store.add(0, 20, 90));
+        assertFalse(store.add(0, 10, 60));
+        assertTrue(store.add(0, 10, 61));
+        assertFalse(store.add(0, 10, 61));
+        assertEquals("0/30/40 0/20/90 0/10/60 0/10/60 0/10/61 1/15/10 2/20/70", contents(store));
+
+        // Range lookups seek into the buffer and every run
+        assertTrue(store.getRunCount() > 1);
+        assertEquals(5, store.count(0, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(4, store.count(0, 10, 20));
+        assertEquals(0, store.count(0, 21, 29));
+        assertEquals(1, store.count(1, Long.MIN_VALUE, Long.MAX_VALUE));
+        EventStore.Cursor c = store.cursor(0, 15, 30);
+        assertTrue(c.next());
+        assertEquals(30, c.timestamp());
+        assertTrue(c.next());
+        assertEquals(20, c.timestamp());
+        assertFalse(c.next());
+        assertEquals("0/30/40 0/20/90 0/10/60 0/10/60 0/10/61", contents(store.cursor(0, 1)));
+        assertEquals("1/15/10 2/20/70", contents(store.cursor(1, 3)));
+        assertEquals("", contents(store.cursor(3, 5)));
+
+        store.compact();
+        assertEquals(1, store.getRunCount());
+        assertEquals("0/30/40 0/20/90 0/10/60 0/10/60 0/10/61 1/15/10 2/20/70", contents(store));
+        assertEquals(1, dir.toFile().list().length);
+        assertEquals(4, store.count(0, 10, 20));
+
+        store.close();
+        assertEquals(0, dir.toFile().list().length);
+        try {
+            store.add(0, 1, 1);
+            fail("A closed store should not accept events");
+        } catch (IllegalStateException e) {
+            assertEquals("Event store is closed.", e.getMessage());
+        }
+        assertTrue(dir.toFile().delete());
+    }
+
+    @Test
+    public void testBackgroundCompaction() {
+        EventStore store = new EventStore(new int[0], new long[0], new int[0], null, 8, 3);
+        Random random = new Random(316);
+        boolean[][] seen = new boolean[4][200];
+        int added = 0;
+        for (int i = 0; i < 2000; i++) {
+            int room = random.nextInt(4);
+            int time = random.nextInt(200);
+            boolean expected = !seen[room][time];
+            seen[room][time] = true;
+            assertEquals(expected, store.add(room, time, 50));
+            if (expected) {
+                added++;
+            }
+        }
+
+        // Whatever state compaction is in, the merged view is complete and ordered
+        EventStore.Cursor c = store.cursor();
+        int count = 0;
+        int lastRoom = -1;
+        long lastTime = Long.MAX_VALUE;
+        while (c.next()) {
+            assertTrue(c.room() > lastRoom || c.room() == lastRoom && c.timestamp() < lastTime);
+            lastRoom = c.room();
+            lastTime = c.timestamp();
+            count++;
+        }
+        assertEquals(added, count);
+        store.close();
+    }
+
+    @Test
+    public void testSizeTieredCompaction() throws IOException {
+        Path dir = Files.createTempDirectory("event-store-test");
+        int[] rooms = new int[1000];
+        long[] timestamps = new long[1000];
+        int[] percents = new int[1000];
+        for (int i = 0; i < rooms.length; i++) {
+            timestamps[i] = 2000 - i;
+        }
+        EventStore store = new EventStore(rooms, timestamps, percents, dir, 4, 2);
+
+        // Three small flushed runs are merged with each other but not with the large base
+        for (int i = 0; i < 12; i++) {
+            assertTrue(store.add(1, i, 0));
+        }
+        store.awaitCompaction();
+        assertEquals(2, store.getRunCount());
+        assertEquals(1, dir.toFile().list().length);
+        assertEquals(1000, store.count(0, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(12, store.count(1, Long.MIN_VALUE, Long.MAX_VALUE));
+
+        // A full compaction still merges the base
+        store.compact();
+        assertEquals(1, store.getRunCount());
+        assertEquals(1000, store.count(0, Long.MIN_VALUE, Long.MAX_VALUE));
+        store.close();
+        assertTrue(dir.toFile().delete());
+    }
+
+    @Test
+    public void testDuplicatesAcrossRuns() {
+        EventStore store = new EventStore(new int[0], new long[0], new int[0], null, 16, 1000);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(store.add(i % 7, i, i % 101));
+        }
+        assertTrue(store.getRunCount() > 10);
+
+        // Every run's filter passes its own events, so each repeat is refused
+        for (int i = 0; i < 500; i++) {
+            assertFalse(store.add(i % 7, i, i % 101));
+            assertTrue(store.add(i % 7, i, i % 101 + 1));
+        }
+        long total = 0;
+        for (int room = 0; room < 7; room++) {
+            total += store.count(room, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        assertEquals(1000, total);
+        store.close();
+    }
+
+    @Test
+    public void testConcurrentReaders() throws InterruptedException {
+        // A high run limit keeps every flushed run on disk without compaction
+        EventStore store = new EventStore(new int[0], new long[0], new int[0], null, 16, 1000);
+        Random random = new Random(316);
+        for (int i = 0; i < 1000; i++) {
+            store.add(random.nextInt(40), random.nextInt(500), random.nextInt(101));
+        }
+        assertTrue(store.getRunCount() > 10);
+        String expected = contents(store);
+
+        // Each thread reads its own range of rooms while the others read theirs
+        String[] ranges = new String[8];
+        Thread[] threads = new Thread[ranges.length];
+        for (int t = 0; t < threads.length; t++) {
+            int chunk = t;
+            EventStore.Cursor c = store.cursor(chunk * 5, chunk * 5 + 5);
+            threads[t] = new Thread(() -> ranges[chunk] = contents(c));
+            threads[t].start();
+        }
+        StringBuilder joined = new StringBuilder();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            if (joined.length() > 0 && ranges[t].length() > 0) {
+                joined.append(" ");
+            }
+            joined.append(ranges[t]);
+        }
+        assertEquals(expected, joined.toString());
+        store.close();
+    }
+
+    @Test
+    public void testClosedCursorReleasesRuns() throws IOException {
+        Path dir = Files.createTempDirectory("event-store-test");
+        EventStore store = new EventStore(new int[0], new long[0], new int[0], dir, 4, 1000);
+        for (int i = 0; i < 40; i++) {
+            store.add(i % 4, i, 50);
+        }
+        assertTrue(store.getRunCount() > 5);
+
+        // A cursor that stops early keeps its runs readable after they are merged away
+        EventStore.Cursor c = store.cursor(0, 2);
+        assertTrue(c.next());
+        store.compact();
+        assertEquals(1, dir.toFile().list().length);
+        assertTrue(c.next());
+        assertTrue(openFiles(dir) > 1);
+
+        // Closing it closes the merged-away run files
+        c.close();
+        c.close();
+        assertTrue(openFiles(dir) <= 1);
+        store.close();
+        assertTrue(dir.toFile().delete());
+    }
+
+    /**
+     * Returns the number of files this process has open in a directory, or
+     * 0 where the platform does not list open files
+     * @param dir directory to look in
+     * @return number of open files in the directory
+     * @throws IOException if the open files cannot be listed
+     */
+    private static long openFiles(Path dir) throws IOException {
+        Path fds = Paths.get("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return 0;
+        }
+        String prefix = dir.toRealPath().toString();
+        try (Stream<Path> open = Files.list(fds)) {
+            return open.filter(fd -> {
+                try {
+                    return Files.readSymbolicLink(fd).toString().startsWith(prefix);
+                } catch (IOException e) {
+                    // The descriptor was closed while listing
+                    return false;
+                }
+            }).count();
+        }
+    }
+
+    /**
+     * Returns the events in the store as room/timestamp/percent triples
+     * @param store store to read
+     * @return events separated by spaces
+     */
+    private String contents(EventStore store) {
+        return contents(store.cursor());
+    }
+
+    /**
+     * Returns the events of a cursor as room/timestamp/percent triples
+     * @param c cursor to read
+     * @return events separated by spaces
+     */
+    private String contents(EventStore.Cursor c) {
+        StringBuilder sb = new StringBuilder();
+        while (c.next()) {
+            if (sb.length() > 0) {
+                sb.append(" ");
+            }
+            sb.append(c.room()).append("/").append(c.timestamp()).append("/").append(c.percent());
+        }
+        return sb.toString();
+    }
+}
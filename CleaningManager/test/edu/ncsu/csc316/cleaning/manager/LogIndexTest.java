@@ -0,0 +1,143 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import edu.ncsu.csc316.cleaning.data.CleaningLogEntry;
+import edu.ncsu.csc316.cleaning.io.InputReader;
+import edu.ncsu.csc316.dsa.list.List;
+
+/**
+ * Tests the LogIndex class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class LogIndexTest {
+
+    @Test
+    public void testReadBlocks() throws FileNotFoundException {
+        List<CleaningLogEntry> expected = InputReader.readLogFile("input/sample-logs.csv");
+
+        // Blocks smaller than a line, a few lines, and the whole file all read every line once
+        int[] blockSizes = {1, 40, 100, LogIndex.DEFAULT_BLOCK_SIZE};
+        for (int blockSize : blockSizes) {
+            LogIndex index = new LogIndex("input/sample-logs.csv", blockSize);
+            int i = 0;
+            for (int b = 0; b < index.getBlockCount(); b++) {
+                if (b > 0) {
+                    assertTrue(index.getBlockStart(b) > index.getBlockStart(b - 1));
+                }
+                for (CleaningLogEntry actual : index.readBlock(b)) {
+                    CleaningLogEntry e = expected.get(i++);
+                    assertEquals(e.getTimestamp(), actual.getTimestamp());
+                    assertEquals(e.getRoomID(), actual.getRoomID());
+                    assertEquals(e.getPercentCompleted(), actual.getPercentCompleted());
+                }
+            }
+            assertEquals(expected.size(), i);
+        }
+        assertEquals(1, new LogIndex("input/sample-logs.csv", LogIndex.DEFAULT_BLOCK_SIZE).getBlockCount());
+    }
+
+    @Test
+    public void testInvalid() throws FileNotFoundException {
+        try {
+            new LogIndex("input/no-such-file.csv", 100);
+            fail("A missing file should not be indexed");
+        } catch (FileNotFoundException e) {
+            assertNotNull(e.getMessage());
+        }
+        try {
+            new LogIndex("input/sample-logs.csv", 0);
+            fail("Blocks must hold at least one byte");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Block size must be greater than 0.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSameGrammarAsInputReader() throws IOException {
+        String header = "Timestamp,RoomID,PercentCompleted";
+        String office = "06/01/2021 13:39:01,Office,78";
+        String dining = "05/23/2021 11:51:19,Dining Room,89";
+        String[] logs = {
+            // Every line separator a Scanner recognizes
+            header + "\r" + office + "\r" + dining + "\r",
+            header + "\r\n" + office + "\r\n" + dining,
+            header + "\u2028" + office + "\u0085" + dining + "\u2029",
+            // Fields after the percent are ignored
+            header + "\n" + office + ",extra\n" + dining + "\n",
+            // A header alone, with or without a line separator
+            header,
+            header + "\n",
+            // Blank lines, padded or missing percents and bad timestamps all fail
+            header + "\n" + office + "\n\n" + dining + "\n",
+            header + "\n" + office + "\n\n",
+            header + "\r\n\r\n" + office,
+            header + "\n06/01/2021 13:39:01,Office, 78\n",
+            header + "\n06/01/2021 13:39:01,Office\n",
+            header + "\n06/01/2021 13:39:01,Office,78%\n",
+            header + "\n6/1/2021 13:39:01,Office,78\n",
+            // Signs, leading zeros, long numbers and empty fields take the Scanner's path
+            header + "\n06/01/2021 13:39:01,Office,+78\n",
+            header + "\n06/01/2021 13:39:01,Office,078\n" + dining + "\n",
+            header + "\n06/01/2021 13:39:01,Office,-5\n",
+            header + "\n06/01/2021 13:39:01,Office,-\n",
+            header + "\n06/01/2021 13:39:01,Office,12345678901\n",
+            header + "\n06/01/2021 13:39:01,Office,\n",
+            header + "\n06/01/2021 13:39:01,,78\n",
+            header + "\n,06/01/2021 13:39:01,Office,78\n",
+            // An empty file has no header
+            "",
+        };
+        int[] blockSizes = {1, 7, 40, LogIndex.DEFAULT_BLOCK_SIZE};
+        for (String log : logs) {
+            Path file = Files.createTempFile("cleaning-log", ".csv");
+            try {
+                Files.write(file, log.getBytes(StandardCharsets.UTF_8));
+                String expected = read(file.toString(), 0);
+                for (int blockSize : blockSizes) {
+                    assertEquals(expected, read(file.toString(), blockSize));
+                }
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Reads a cleaning log with InputReader or, if a block size is given,
+     * with a LogIndex, and describes the events read or the exception thrown
+     * @param path path to the log file
+     * @param blockSize block size of the index, or 0 to use InputReader
+     * @return one line per event read, or the exception thrown
+     * @throws FileNotFoundException if the file cannot be read
+     */
+    private static String read(String path, int blockSize) throws FileNotFoundException {
+        StringBuilder events = new StringBuilder();
+        try {
+            if (blockSize == 0) {
+                for (CleaningLogEntry e : InputReader.readLogFile(path)) {
+                    events.append(e.getTimestamp() + "," + e.getRoomID() + "," + e.getPercentCompleted() + "\n");
+                }
+            } else {
+                LogIndex index = new LogIndex(path, blockSize);
+                for (int b = 0; b < index.getBlockCount(); b++) {
+                    for (CleaningLogEntry e : index.readBlock(b)) {
+                        events.append(e.getTimestamp() + "," + e.getRoomID() + "," + e.getPercentCompleted() + "\n");
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+        return events.toString();
+    }
+}
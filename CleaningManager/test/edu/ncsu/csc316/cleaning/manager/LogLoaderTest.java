@@ -0,0 +1,121 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.ncsu.csc316.cleaning.io.InputReader;
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
+
+/**
+ * Tests the LogLoader class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class LogLoaderTest {
+
+    @Test
+    public void testLogLoader() throws FileNotFoundException {
+        CleaningManager eager = new CleaningManager("input/sample-rooms.csv", "input/sample-logs.csv");
+        LogLoader loader = new LogLoader("input/sample-rooms.csv", "input/sample-logs.csv", null, StorageMode.HEAP, 64);
+        CleaningManager lazy = loader.get();
+        assertTrue(loader.isLoaded());
+        assertSame(lazy, loader.get());
+        assertSame(lazy.getRoomStatistics(), loader.getStatistics());
+
+        assertEquals(eager.getCoverageSince(LocalDateTime.of(2021, 5, 1, 0, 0)),
+                lazy.getCoverageSince(LocalDateTime.of(2021, 5, 1, 0, 0)));
+        RoomStatistics expected = eager.getRoomStatistics();
+        RoomStatistics actual = lazy.getRoomStatistics();
+        assertEquals(expected.size(), actual.size());
+        for (int room = 0; room < expected.size(); room++) {
+            assertEquals(expected.getRoomID(room), actual.getRoomID(room));
+            assertEquals(expected.getCount(room), actual.getCount(room));
+            assertEquals(expected.getLastCleaned(room), actual.getLastCleaned(room));
+        }
+        eager.close();
+        loader.close();
+    }
+
+    @Test
+    public void testCoverageReaches() throws IOException {
+        LogIndex index = new LogIndex("input/sample-logs.csv", 64);
+        EventSorter sorter = new EventSorter(InputReader.readRoomFile("input/sample-rooms.csv"),
+                index.getBlockCount(), StorageMode.HEAP);
+        long since = CleaningManager.toEpochSecond(LocalDateTime.of(2021, 5, 28, 14, 15, 2));
+
+        // Nothing is known before any block is sorted
+        assertFalse(LogLoader.coverageReaches(sorter, since, 1));
+
+        // With every block sorted the exact coverage of 1538 is reached, but not 1539
+        for (int b = 0; b < index.getBlockCount(); b++) {
+            sorter.sortBlock(index, b);
+        }
+        assertTrue(LogLoader.coverageReaches(sorter, since, 1538));
+        assertFalse(LogLoader.coverageReaches(sorter, since, 1539));
+
+        // Lines repeated in the log count each time, so twice 1538 is reached but not twice 1539
+        List<String> lines = Files.readAllLines(Paths.get("input/sample-logs.csv"));
+        Path doubled = Files.createTempFile("cleaning-log", ".csv");
+        try {
+            Files.write(doubled, lines);
+            Files.write(doubled, lines.subList(1, lines.size()), StandardOpenOption.APPEND);
+            index = new LogIndex(doubled.toString(), 64);
+            sorter = new EventSorter(InputReader.readRoomFile("input/sample-rooms.csv"), index.getBlockCount(),
+                    StorageMode.OFF_HEAP);
+            for (int b = 0; b < index.getBlockCount(); b++) {
+                sorter.sortBlock(index, b);
+            }
+            assertTrue(LogLoader.coverageReaches(sorter, since, 3076));
+            assertFalse(LogLoader.coverageReaches(sorter, since, 3078));
+        } finally {
+            Files.delete(doubled);
+        }
+
+        // Old events count toward the scan limit, so a recent event sorted after them is not looked at
+        Path stale = Files.createTempFile("cleaning-log", ".csv");
+        try (BufferedWriter out = Files.newBufferedWriter(stale)) {
+            out.write("Timestamp,RoomID,PercentCompleted\n06/01/2021 13:39:01,Office,100\n");
+            for (int i = 0; i < 70000; i++) {
+                out.write(String.format("01/01/2020 %02d:%02d:%02d,Dining Room,50\n", i / 3600 % 24, i / 60 % 60,
+                        i % 60));
+            }
+        }
+        try {
+            index = new LogIndex(stale.toString(), 1 << 24);
+            sorter = new EventSorter(InputReader.readRoomFile("input/sample-rooms.csv"), index.getBlockCount(),
+                    StorageMode.HEAP);
+            sorter.sortBlock(index, 0);
+            assertEquals(1, index.getBlockCount());
+            assertFalse(LogLoader.coverageReaches(sorter, since, 1));
+        } finally {
+            Files.delete(stale);
+        }
+    }
+
+    @Test
+    public void testMissingFiles() {
+        try {
+            new LogLoader("input/no-such-file.csv", "input/sample-logs.csv", null, StorageMode.HEAP);
+            fail("A missing room file should be reported right away");
+        } catch (FileNotFoundException e) {
+            assertNotNull(e.getMessage());
+        }
+        try {
+            new LogLoader("input/sample-rooms.csv", "input/no-such-file.csv", null, StorageMode.HEAP);
+            fail("A missing log file should be reported right away");
+        } catch (FileNotFoundException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+}
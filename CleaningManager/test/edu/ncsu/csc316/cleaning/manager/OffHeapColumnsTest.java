@@ -0,0 +1,62 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests the OffHeapColumns class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class OffHeapColumnsTest {
+
+    @Test
+    public void testOffHeapColumns() {
+        OffHeapColumns columns = new OffHeapColumns();
+        assertEquals(0, columns.size());
+        assertEquals(0, columns.getSegmentCount());
+
+        // Enough records to grow the first segment several times
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            columns.add(i % 7, 1622505600L + i, i % 101);
+        }
+        assertEquals(n, columns.size());
+        assertEquals(1, columns.getSegmentCount());
+        assertEquals(n, columns.getSegmentSize(0));
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 7, columns.room(i));
+            assertEquals(1622505600L + i, columns.timestamp(i));
+            assertEquals(i % 101, columns.percent(i));
+        }
+        assertTrue(columns.getSegment(0).isDirect());
+
+        try {
+            columns.room(n);
+            fail("Reading past the last record should not be allowed");
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals("Index: 5000, Size: 5000", e.getMessage());
+        }
+        try {
+            columns.timestamp(-1);
+            fail("Reading before the first record should not be allowed");
+        } catch (IndexOutOfBoundsException e) {
+            assertEquals("Index: -1, Size: 5000", e.getMessage());
+        }
+
+        columns.close();
+        try {
+            columns.percent(0);
+            fail("Closed columns should not be readable");
+        } catch (IllegalStateException e) {
+            assertEquals("Off-heap columns are closed.", e.getMessage());
+        }
+        try {
+            columns.add(0, 0, 0);
+            fail("Closed columns should not accept records");
+        } catch (IllegalStateException e) {
+            assertEquals("Off-heap columns are closed.", e.getMessage());
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.io.FileNotFoundException;
 
 import org.junit.Test;
 
+import edu.ncsu.csc316.cleaning.manager.CleaningManager.StorageMode;
+
 /**
  * Tests the ReportManager class and its methods
  * @author Ethan Treece
@@ -88,7 +90,146 @@ public class ReportManagerTest {
 
         assertEquals("Number of rooms must be greater than 0.", manager.getFrequencyReport(-2));
         
+        StringBuffer s4 = new StringBuffer();
+        s4.append("Stalest Rooms [\n"
+                + "   Kitchen has never been cleaned\n"
+                + "   Foyer was last cleaned on 05/01/2021 10:03:11, average 93.0% cleaned\n"
+                + "   Guest Bathroom was last cleaned on 05/17/2021 04:37:31, average 91.0% cleaned\n"
+                + "   Guest Bedroom was last cleaned on 05/23/2021 11:51:19, average 75.5% cleaned\n"
+                + "   Living Room was last cleaned on 05/30/2021 10:14:41, average 83.7% cleaned\n"
+                + "   Dining Room was last cleaned on 05/31/2021 09:27:45, average 88.0% cleaned\n"
+                + "   Office was last cleaned on 06/01/2021 13:39:01, average 78.0% cleaned\n"
+                + "]\n");
+        assertEquals(s4.toString(), manager.getStalestRoomsReport(10));
+        
+        StringBuffer s5 = new StringBuffer();
+        s5.append("Stalest Rooms [\n"
+                + "   Kitchen has never been cleaned\n"
+                + "   Foyer was last cleaned on 05/01/2021 10:03:11, average 93.0% cleaned\n"
+                + "]\n");
+        assertEquals(s5.toString(), manager.getStalestRoomsReport(2));
+        
+        assertEquals("Number of rooms must be greater than 0.", manager.getStalestRoomsReport(0));
+        
 
     }
-
+    
+    @Test
+    public void testOffHeapReports() {
+        ReportManager heap = null;
+        ReportManager offHeap = null;
+        try {
+            heap = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv");
+            offHeap = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv", StorageMode.OFF_HEAP);
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        
+        assertEquals(heap.getRoomReport(), offHeap.getRoomReport());
+        assertEquals(heap.getFrequencyReport(7), offHeap.getFrequencyReport(7));
+        assertEquals(heap.getStalestRoomsReport(3), offHeap.getStalestRoomsReport(3));
+        assertEquals(heap.getVacuumBagReport("05/28/2021 14:15:02"), offHeap.getVacuumBagReport("05/28/2021 14:15:02"));
+        
+        heap.close();
+        offHeap.close();
+    }
+    
+    @Test
+    public void testParallelRoomReport() {
+        try {
+            manager = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv");
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        
+        // Every chunk size must give the same report as rendering all rooms at once
+        String whole = manager.getRoomReport(7);
+        assertEquals(whole, manager.getRoomReport());
+        for (int roomsPerChunk = 1; roomsPerChunk <= 8; roomsPerChunk++) {
+            assertEquals(whole, manager.getRoomReport(roomsPerChunk));
+        }
+        manager.close();
+    }
+    
+    @Test
+    public void testLazyReports() {
+        ReportManager lazy = null;
+        try {
+            manager = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv");
+            lazy = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv", StorageMode.HEAP, true);
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        
+        assertEquals(manager.getVacuumBagReport("05/01/2021 00:00:00"), lazy.getVacuumBagReport("05/01/2021 00:00:00"));
+        assertEquals(manager.getVacuumBagReport("05/28/2021 14:15:02"), lazy.getVacuumBagReport("05/28/2021 14:15:02"));
+        assertEquals(manager.getRoomReport(), lazy.getRoomReport());
+        assertEquals(manager.getFrequencyReport(4), lazy.getFrequencyReport(4));
+        assertEquals(manager.getStalestRoomsReport(4), lazy.getStalestRoomsReport(4));
+        manager.close();
+        lazy.close();
+    }
+    
+    @Test
+    public void testDuplicateEvents() {
+        try {
+            manager = new ReportManager("input/sample-rooms.csv", "input/duplicate-logs.csv");
+        } catch (FileNotFoundException e) {
+            fail("Files not found");
+        }
+        
+        // A line repeated in the log is reported as many times as it appears
+        assertEquals("Frequency of Cleanings [\n"
+                + "   Office has been cleaned 2 times\n"
+                + "   Dining Room has been cleaned 1 times\n"
+                + "]\n", manager.getFrequencyReport(2));
+        assertTrue(manager.getRoomReport().contains("   Office was cleaned on [\n"
+                + "      06/01/2021 13:39:01\n"
+                + "      06/01/2021 13:39:01\n"
+                + "   ]\n"));
+        // 168 * 0.78 twice plus 225 * 0.89 is 462.33 square feet
+        assertEquals("Vacuum Bag Report (last replaced 05/01/2021 00:00:00) [\n   Bag is due for replacement in 4818 SQ FT\n]", 
+                manager.getVacuumBagReport("05/01/2021 00:00:00"));
+        manager.close();
+    }
+    
+    @Test
+    public void testClosed() {
+        ReportManager lazy = null;
+        for (StorageMode storage : StorageMode.values()) {
+            try {
+                manager = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv", storage);
+                lazy = new ReportManager("input/sample-rooms.csv", "input/sample-logs.csv", storage, true);
+            } catch (FileNotFoundException e) {
+                fail("Files not found");
+            }
+            manager.close();
+            lazy.close();
+            // Closing twice has no effect
+            manager.close();
+            
+            for (ReportManager closed : new ReportManager[] {manager, lazy}) {
+                assertClosed(() -> closed.getVacuumBagReport("05/01/2021 00:00:00"));
+                // The closed check comes before the arguments are checked
+                assertClosed(() -> closed.getVacuumBagReport("05/01/2021"));
+                assertClosed(() -> closed.getFrequencyReport(2));
+                assertClosed(() -> closed.getFrequencyReport(0));
+                assertClosed(() -> closed.getStalestRoomsReport(2));
+                assertClosed(() -> closed.getRoomReport());
+            }
+        }
+    }
+    
+    /**
+     * Asserts that a report fails because the report manager is closed
+     * @param report the report to run
+     */
+    private static void assertClosed(Runnable report) {
+        try {
+            report.run();
+            fail("Closed report manager was used");
+        } catch (IllegalStateException e) {
+            assertEquals(CleaningManager.CLOSED_MESSAGE, e.getMessage());
+        }
+    }
 }
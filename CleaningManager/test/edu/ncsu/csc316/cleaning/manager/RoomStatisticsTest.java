@@ -0,0 +1,46 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.ncsu.csc316.cleaning.data.RoomRecord;
+
+/**
+ * Tests the RoomStatistics class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class RoomStatisticsTest {
+
+    @Test
+    public void testRoomStatistics() {
+        RoomRecord[] rooms = {new RoomRecord("Attic", 10, 10), new RoomRecord("Den", 3, 5), new RoomRecord("Hall", 2, 2)};
+        RoomStatistics stats = new RoomStatistics(rooms);
+        assertEquals(3, stats.size());
+        assertEquals(1, stats.indexOf("Den"));
+        assertEquals(-1, stats.indexOf("Garage"));
+        assertEquals("Hall", stats.getRoomID(2));
+
+        stats.record(1, 500, 50);
+        stats.record(1, 300, 25);
+        stats.record(0, 400, 99);
+        assertEquals(2, stats.getCount(1));
+        assertEquals(500, stats.getLastCleaned(1));
+        assertEquals(37.5, stats.getMeanPercent(1), 0.0001);
+        // 15 * 0.75 = 11.25
+        assertEquals(11, stats.getSquareFeetCovered(1));
+        assertEquals(0, stats.getCount(2));
+        assertEquals(RoomStatistics.NEVER_CLEANED, stats.getLastCleaned(2));
+        assertEquals(0, stats.getMeanPercent(2), 0.0001);
+
+        assertArrayEquals(new int[] {2, 0, 1}, stats.getStalest(3));
+        assertArrayEquals(new int[] {2, 0, 1}, stats.getStalest(10));
+        assertArrayEquals(new int[] {2}, stats.getStalest(1));
+        assertArrayEquals(new int[0], stats.getStalest(0));
+
+        // Ties on last cleaned are broken by room ID
+        stats.record(2, 400, 10);
+        assertArrayEquals(new int[] {0, 2, 1}, stats.getStalest(3));
+    }
+}
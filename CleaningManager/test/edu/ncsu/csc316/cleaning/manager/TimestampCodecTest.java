@@ -0,0 +1,76 @@
+package edu.ncsu.csc316.cleaning.manager;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+import org.junit.Test;
+
+/**
+ * Tests the TimestampCodec class and its methods
+ * @author Ethan Treece
+ *
+ */
+public class TimestampCodecTest {
+
+    @Test
+    public void testEncode() {
+        TimestampCodec cached = new TimestampCodec(true);
+        TimestampCodec uncached = new TimestampCodec(false);
+        char[] chars = new char[TimestampCodec.MAX_LENGTH];
+        byte[] bytes = new byte[TimestampCodec.MAX_LENGTH];
+
+        // Walk across leap days, century years and the epoch in uneven steps
+        LocalDateTime time = LocalDateTime.of(1899, 12, 31, 23, 59, 59);
+        while (time.getYear() < 2102) {
+            String expected = time.format(ReportManager.DATE_TIME_FORMAT);
+            long epochSecond = time.toEpochSecond(ZoneOffset.UTC);
+            assertEquals(expected, cached.format(epochSecond));
+            assertEquals(expected, uncached.format(epochSecond));
+            assertEquals(expected, new String(chars, 0, cached.encode(time, chars, 0)));
+            assertEquals(expected, new String(bytes, 0, cached.encode(epochSecond, bytes, 0)));
+            time = time.plusSeconds(3 * 86400 + 3671);
+        }
+
+        assertEquals("01/01/0001 00:00:00", cached.format(LocalDateTime.of(1, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC)));
+        assertEquals("12/31/9999 23:59:59", cached.format(LocalDateTime.of(9999, 12, 31, 23, 59, 59).toEpochSecond(ZoneOffset.UTC)));
+
+        // Years that do not fit four digits are written exactly as the formatter writes them
+        LocalDateTime big = LocalDateTime.of(10000, 1, 1, 0, 0);
+        assertEquals("01/01/+10000 00:00:00", cached.format(big.toEpochSecond(ZoneOffset.UTC)));
+        assertEquals(21, cached.encode(big, chars, 0));
+        LocalDateTime bc = LocalDateTime.of(0, 6, 1, 12, 0);
+        assertEquals(bc.format(ReportManager.DATE_TIME_FORMAT), cached.format(bc.toEpochSecond(ZoneOffset.UTC)));
+    }
+
+    @Test
+    public void testParse() {
+        String[] valid = {"05/28/2021 14:15:02", "02/29/2020 00:00:00", "12/31/9999 23:59:59", "01/01/0001 00:00:00",
+            "02/29/2021 00:00:00", "02/31/2021 00:00:00", "04/31/2021 00:00:00", "05/28/2021 24:00:00", "05/28/+20211 14:15:02"};
+        for (String s : valid) {
+            assertEquals(s, LocalDateTime.parse(s, ReportManager.DATE_TIME_FORMAT).toEpochSecond(ZoneOffset.UTC),
+                    TimestampCodec.parse(s));
+        }
+
+        String[] invalid = {"string", "", "05/28/2021 14:15:02 ", "5/28/2021 14:15:02", "13/01/2021 00:00:00",
+            "05/00/2021 00:00:00", "05/32/2021 00:00:00", "05/28/0000 10:00:00",
+            "05/28/20a1 14:15:02", "05/28/2021 14:15:60", "05/28/2021 14:60:00", "05/28/2021 25:00:00",
+            "05-28-2021 14:15:02", "05/28/20211 14:15:02"};
+        for (String s : invalid) {
+            String expected = null;
+            try {
+                LocalDateTime.parse(s, ReportManager.DATE_TIME_FORMAT);
+            } catch (DateTimeParseException e) {
+                expected = e.getMessage();
+            }
+            try {
+                TimestampCodec.parse(s);
+                fail("Should not parse " + s);
+            } catch (DateTimeParseException e) {
+                assertEquals(expected, e.getMessage());
+            }
+        }
+    }
+}